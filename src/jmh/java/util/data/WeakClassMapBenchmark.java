@@ -0,0 +1,60 @@
+package util.data;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Class 키 조회를 WeakClassMap(ClassValue) 과 동일성 해시를 쓰는 맵들로 비교한다.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WeakClassMapBenchmark {
+	private static final Class<?>[] TYPES = { String.class, Integer.class, Long.class, Double.class, Object.class, Map.class,
+			Runnable.class, Thread.class, StringBuilder.class, Number.class, Boolean.class, Character.class, Byte.class,
+			Short.class, Float.class, Class.class };
+
+	@Param({ "WeakClassMap", "WeakIdentityMap", "ConcurrentWeakIdentityMap" })
+	public String impl;
+
+	private Map<Class<?>, Object> map;
+	private int index;
+
+	@Setup
+	public void setup() {
+		switch (impl) {
+		case "WeakClassMap":
+			map = new WeakClassMap<>();
+			break;
+		case "WeakIdentityMap":
+			map = new WeakIdentityMap<>();
+			break;
+		case "ConcurrentWeakIdentityMap":
+			map = new ConcurrentWeakIdentityMap<>();
+			break;
+		default:
+			throw new IllegalArgumentException(impl);
+		}
+		for (Class<?> type : TYPES) {
+			map.put(type, type.getName());
+		}
+	}
+
+	@Benchmark
+	public Object get() {
+		return map.get(TYPES[index++ & (TYPES.length - 1)]);
+	}
+}
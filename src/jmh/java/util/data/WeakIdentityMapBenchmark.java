@@ -0,0 +1,165 @@
+package util.data;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// WeakIdentityMap 과 JDK 맵의 기본 연산을 비교한다. 할당량은 -prof gc 로 함께 본다.
+// mvn -Pjmh compile exec:exec -Djmh.args="WeakIdentityMapBenchmark -prof gc"
+// collisions 는 같은 해시를 공유하는 키의 수이다. IdentityHashMap 은 해시를 바꿀 수 없어 항상 identityHashCode 를 쓴다.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WeakIdentityMapBenchmark {
+	@Param({ "WeakIdentityMap", "IdentityHashMap", "WeakHashMap", "SynchronizedWeakIdentityMap", "CopyOnWriteWeakIdentityMap" })
+	public String impl;
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	@Param({ "1", "8" })
+	public int collisions;
+
+	private Map<Key, Object> map;
+	private Key[] keys;
+	private Key[] missingKeys;
+	private int index;
+
+	@Setup
+	public void setup() {
+		map = create(impl);
+		SplittableRandom random = new SplittableRandom(42);
+		keys = new Key[size];
+		missingKeys = new Key[size];
+		int[] hashes = new int[Math.max(1, size / collisions)];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = random.nextInt();
+		}
+		for (int i = 0; i < size; i++) {
+			keys[i] = new Key(hashes[i % hashes.length]);
+			missingKeys[i] = new Key(hashes[random.nextInt(hashes.length)]);
+			map.put(keys[i], Boolean.TRUE);
+		}
+	}
+
+	static Map<Key, Object> create(String impl) {
+		switch (impl) {
+		case "WeakIdentityMap":
+			// WeakHashMap 과 같은 해시 분포가 되도록 Key.hashCode 를 쓴다.
+			return new WeakIdentityMap<>(Key::hashCode);
+		case "IdentityHashMap":
+			return new IdentityHashMap<>();
+		case "WeakHashMap":
+			return new WeakHashMap<>();
+		case "SynchronizedWeakIdentityMap":
+			return Collections.synchronizedMap(new WeakIdentityMap<>(Key::hashCode));
+		case "CopyOnWriteWeakIdentityMap":
+			// 쓰기마다 테이블을 복사하므로 put 계열은 크기에 비례한다.
+			return new CopyOnWriteWeakIdentityMap<>(Key::hashCode);
+		default:
+			throw new IllegalArgumentException(impl);
+		}
+	}
+
+	private int next() {
+		int i = index;
+		index = i + 1 == size ? 0 : i + 1;
+		return i;
+	}
+
+	@Benchmark
+	public Object getHit() {
+		return map.get(keys[next()]);
+	}
+
+	@Benchmark
+	public Object getMiss() {
+		return map.get(missingKeys[next()]);
+	}
+
+	// 기존 키의 값 교체
+	@Benchmark
+	public Object put() {
+		return map.put(keys[next()], Boolean.TRUE);
+	}
+
+	// 새 키를 넣고 지운다.
+	@Benchmark
+	public Object putRemove() {
+		Key key = missingKeys[next()];
+		map.put(key, Boolean.TRUE);
+		return map.remove(key);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int iterate() {
+		int sum = 0;
+		for (Key key : map.keySet()) {
+			sum += key.hash;
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int forEach() {
+		int[] sum = { 0 };
+		map.forEach((key, value) -> sum[0] += key.hash);
+		return sum[0];
+	}
+
+	// 빈 맵에 모두 복사한다.
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Map<Key, Object> putAll() {
+		Map<Key, Object> copy = create(impl);
+		copy.putAll(map);
+		return copy;
+	}
+
+	// parallelStream 과 비교해 분할이 코어 수만큼 빨라지는지 본다. 코어가 여럿인 기계에서 잰다.
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int stream() {
+		return map.keySet().stream().mapToInt(key -> key.hash).sum();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int parallelStream() {
+		return map.keySet().parallelStream().mapToInt(key -> key.hash).sum();
+	}
+
+	// equals 는 동일성 비교이므로 모든 맵에서 같은 키 집합이 된다.
+	static final class Key {
+		final int hash;
+
+		Key(int hash) {
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package util.data;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Map 기본 메서드(get 후 put 등 여러 번 탐색)와 WeakIdentityMap 의 직접 구현을 비교한다.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WeakIdentityMapComputeBenchmark {
+	private static final int SIZE = 1024;
+	private static final Integer ONE = 1;
+	private static final Function<Object, Integer> MAPPING = k -> ONE;
+
+	@Param({ "native", "default" })
+	public String impl;
+
+	private Map<Object, Integer> map;
+	private final Object[] keys = new Object[SIZE];
+	private final Object[] missingKeys = new Object[SIZE];
+	private int index;
+
+	@Setup
+	public void setup() {
+		WeakIdentityMap<Object, Integer> weakIdentityMap = new WeakIdentityMap<>(SIZE);
+		map = impl.equals("native") ? weakIdentityMap : new DefaultMethodsMap<>(weakIdentityMap);
+		for (int i = 0; i < SIZE; i++) {
+			keys[i] = new Object();
+			missingKeys[i] = new Object();
+			map.put(keys[i], ONE);
+		}
+	}
+
+	private int next() {
+		return index++ & (SIZE - 1);
+	}
+
+	@Benchmark
+	public Integer computeIfAbsentHit() {
+		return map.computeIfAbsent(keys[next()], MAPPING);
+	}
+
+	// 없는 키를 넣고 다시 지운다.
+	@Benchmark
+	public Integer computeIfAbsentMiss() {
+		Object key = missingKeys[next()];
+		Integer value = map.computeIfAbsent(key, MAPPING);
+		map.remove(key);
+		return value;
+	}
+
+	@Benchmark
+	public Integer getOrDefault() {
+		return map.getOrDefault(missingKeys[next()], ONE);
+	}
+
+	@Benchmark
+	public Integer putIfAbsentHit() {
+		return map.putIfAbsent(keys[next()], ONE);
+	}
+
+	@Benchmark
+	public Integer merge() {
+		return map.merge(keys[next()], ONE, (a, b) -> b);
+	}
+
+	@Benchmark
+	public Integer compute() {
+		return map.compute(keys[next()], (k, v) -> v);
+	}
+
+	// 추상 메서드만 위임해 나머지는 Map 의 기본 메서드를 쓰게 한다.
+	static final class DefaultMethodsMap<K, V> implements Map<K, V> {
+		private final Map<K, V> map;
+
+		DefaultMethodsMap(Map<K, V> map) {
+			this.map = map;
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return map.containsKey(key);
+		}
+
+		@Override
+		public boolean containsValue(Object value) {
+			return map.containsValue(value);
+		}
+
+		@Override
+		public V get(Object key) {
+			return map.get(key);
+		}
+
+		@Override
+		public V put(K key, V value) {
+			return map.put(key, value);
+		}
+
+		@Override
+		public V remove(Object key) {
+			return map.remove(key);
+		}
+
+		@Override
+		public void putAll(Map<? extends K, ? extends V> m) {
+			map.putAll(m);
+		}
+
+		@Override
+		public void clear() {
+			map.clear();
+		}
+
+		@Override
+		public Set<K> keySet() {
+			return map.keySet();
+		}
+
+		@Override
+		public Collection<V> values() {
+			return map.values();
+		}
+
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			return map.entrySet();
+		}
+	}
+}
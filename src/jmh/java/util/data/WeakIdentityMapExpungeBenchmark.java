@@ -0,0 +1,78 @@
+package util.data;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 키를 모두 놓아 GC 한 뒤 한 번의 호출로 size 항목을 정리하는 시간을 잰다.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class WeakIdentityMapExpungeBenchmark {
+	@Param({ "WeakIdentityMap", "WeakHashMap", "ConcurrentWeakIdentityMap" })
+	public String impl;
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	private Map<Object, Object> map;
+
+	@Setup(Level.Invocation)
+	public void setup() throws InterruptedException {
+		map = create(impl);
+		ReferenceQueue<Object> queue = new ReferenceQueue<>();
+		WeakReference<Object> probe = null;
+		for (int i = 0; i < size; i++) {
+			Object key = new Object();
+			map.put(key, Boolean.TRUE);
+			if (i == size - 1) {
+				probe = new WeakReference<>(key, queue);
+			}
+		}
+		while (queue.remove(10) != probe) {
+			System.gc();
+		}
+		// 나머지 참조도 큐에 들어갈 시간을 준다.
+		Thread.sleep(20);
+	}
+
+	private static Map<Object, Object> create(String impl) {
+		switch (impl) {
+		case "WeakIdentityMap":
+			return new WeakIdentityMap<>();
+		case "WeakHashMap":
+			return new WeakHashMap<>();
+		case "ConcurrentWeakIdentityMap":
+			return new ConcurrentWeakIdentityMap<>();
+		default:
+			throw new IllegalArgumentException(impl);
+		}
+	}
+
+	@Benchmark
+	public int expunge() {
+		if (map instanceof ConcurrentWeakIdentityMap) {
+			return ((ConcurrentWeakIdentityMap<Object, Object>) map).drainCleared();
+		}
+		// 두 맵 모두 size() 에서 큐를 비운다.
+		return map.size();
+	}
+}
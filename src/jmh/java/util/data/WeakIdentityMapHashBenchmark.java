@@ -0,0 +1,84 @@
+package util.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 키가 가진 id 를 해시로 쓸 때와 System.identityHashCode 를 쓸 때를 비교한다.
+// identityHashCode 는 처음 호출될 때 객체 헤더에 해시를 기록하므로 새 키를 넣을 때 비용이 크고,
+// 헤더에 해시가 있는 객체는 biased lock 을 쓸 수 없어 키로 동기화하는 코드도 느려진다.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:BiasedLockingStartupDelay=0")
+@State(Scope.Thread)
+public class WeakIdentityMapHashBenchmark {
+	private static final int SIZE = 1024;
+
+	@Param({ "identity", "id" })
+	public String hash;
+
+	private WeakIdentityMap<Key, Object> map;
+	private final Key[] keys = new Key[SIZE];
+	private int nextId;
+	private int index;
+
+	@Setup
+	public void setup() {
+		map = hash.equals("id") ? new WeakIdentityMap<>(SIZE, ExpungePolicy.eager(), ReferenceStrength.WEAK, ReferenceStrength.STRONG, Key::id)
+				: new WeakIdentityMap<>(SIZE);
+		for (int i = 0; i < SIZE; i++) {
+			keys[i] = new Key(nextId++);
+			map.put(keys[i], Boolean.TRUE);
+		}
+	}
+
+	private int next() {
+		return index++ & (SIZE - 1);
+	}
+
+	// 매번 새로 만든 키를 넣고 지운다.
+	@Benchmark
+	public Object putRemoveNewKey() {
+		Key key = new Key(nextId++);
+		map.put(key, Boolean.TRUE);
+		return map.remove(key);
+	}
+
+	@Benchmark
+	public Object getHit() {
+		return map.get(keys[next()]);
+	}
+
+	// 맵에 있는 키로 동기화한 뒤 읽는다.
+	@Benchmark
+	public Object lockedGet() {
+		Key key = keys[next()];
+		synchronized (key) {
+			return map.get(key);
+		}
+	}
+
+	static final class Key {
+		private final int id;
+
+		Key(int id) {
+			this.id = id;
+		}
+
+		int id() {
+			return id;
+		}
+	}
+}
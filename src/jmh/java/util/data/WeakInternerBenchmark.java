@@ -0,0 +1,77 @@
+package util.data;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 이미 대표가 있는 값의 intern 을 WeakInterner, 동기화한 WeakHashMap, String.intern 으로 비교한다.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WeakInternerBenchmark {
+	private static final int SIZE = 1024;
+
+	@Param({ "WeakInterner", "WeakHashMap", "String.intern" })
+	public String impl;
+
+	private UnaryOperator<String> interner;
+	private final String[] canonicals = new String[SIZE];
+	private final String[] copies = new String[SIZE];
+	private int index;
+
+	@Setup
+	public void setup() {
+		switch (impl) {
+		case "WeakInterner":
+			WeakInterner<String> weakInterner = new WeakInterner<>();
+			interner = weakInterner::intern;
+			break;
+		case "WeakHashMap":
+			Map<String, WeakReference<String>> map = Collections.synchronizedMap(new WeakHashMap<>());
+			interner = s -> {
+				synchronized (map) {
+					WeakReference<String> ref = map.get(s);
+					String canonical = ref == null ? null : ref.get();
+					if (canonical == null) {
+						map.put(s, new WeakReference<>(s));
+						canonical = s;
+					}
+					return canonical;
+				}
+			};
+			break;
+		case "String.intern":
+			interner = String::intern;
+			break;
+		default:
+			throw new IllegalArgumentException(impl);
+		}
+		for (int i = 0; i < SIZE; i++) {
+			canonicals[i] = interner.apply(new String("value-" + i));
+			copies[i] = new String("value-" + i);
+		}
+	}
+
+	@Benchmark
+	public String internHit() {
+		return interner.apply(copies[index++ & (SIZE - 1)]);
+	}
+}
@@ -0,0 +1,191 @@
+package util.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// 직접(direct) ByteBuffer 슬랩을 크기 등급별 블록으로 나누어 쓰는 할당기.
+// 블록 크기는 64 바이트부터 슬랩 크기까지의 2의 거듭제곱이며, 슬랩 하나는 처음 배정된 등급의 블록만 담는다.
+// 해제된 블록은 등급별 스택에 쌓아 다음 할당에 재사용하고, 슬랩은 reset 에서만 다른 등급으로 돌아간다.
+// 블록은 int 핸들(슬랩 번호와 64 바이트 단위 오프셋)로 가리키므로 힙에는 항목당 int 두 개만 남는다.
+final class BufferArena {
+	static final int DEFAULT_SLAB_SIZE = 1 << 20;
+	private static final int MIN_BLOCK_SHIFT = 6;
+	private static final int MIN_BLOCK = 1 << MIN_BLOCK_SHIFT;
+	// DirectByteBuffer 와 그 Cleaner 객체의 대략의 크기
+	private static final int SLAB_OBJECT_BYTES = 64;
+
+	private final int slabSize;
+	// 슬랩 하나의 64 바이트 단위 수의 log2
+	private final int slabShift;
+	private final int maximumSlabs;
+	private ByteBuffer[] slabs = new ByteBuffer[4];
+	private int slabCount;
+	// 어느 등급에도 배정되지 않은 슬랩 번호
+	private int[] idleSlabs = new int[4];
+	private int idleCount;
+
+	// 등급별로 아직 나누지 않은 영역이 남은 슬랩과 다음 오프셋
+	private final int[] bumpSlabs;
+	private final int[] bumpOffsets;
+	private final int[][] freeBlocks;
+	private final int[] freeCounts;
+	private long usedBytes;
+
+	BufferArena(int slabSize) {
+		this(slabSize, Integer.MAX_VALUE);
+	}
+
+	// 슬랩을 maximumSlabs 개까지만 만든다. 핸들이 int 에 들어가야 하므로 그보다 더 줄어들 수 있다.
+	BufferArena(int slabSize, int maximumSlabs) {
+		if (slabSize < MIN_BLOCK || Integer.bitCount(slabSize) != 1) {
+			throw new IllegalArgumentException("Illegal slab size: " + slabSize);
+		}
+		if (maximumSlabs <= 0) {
+			throw new IllegalArgumentException("Illegal maximum slabs: " + maximumSlabs);
+		}
+		this.slabSize = slabSize;
+		this.slabShift = Integer.numberOfTrailingZeros(slabSize) - MIN_BLOCK_SHIFT;
+		this.maximumSlabs = Math.min(maximumSlabs, Integer.MAX_VALUE >>> slabShift);
+		int classes = slabShift + 1;
+		bumpSlabs = new int[classes];
+		Arrays.fill(bumpSlabs, -1);
+		bumpOffsets = new int[classes];
+		freeBlocks = new int[classes][];
+		freeCounts = new int[classes];
+	}
+
+	int getSlabSize() {
+		return slabSize;
+	}
+
+	static int sizeClass(int length) {
+		return length <= MIN_BLOCK ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_BLOCK_SHIFT;
+	}
+
+	// length 바이트를 담을 블록을 할당하고 핸들을 돌려준다.
+	int allocate(int length) {
+		if (length < 0 || length > slabSize) {
+			throw new IllegalArgumentException("Illegal length: " + length + " (slab size " + slabSize + ")");
+		}
+		int sizeClass = sizeClass(length);
+		int blockSize = MIN_BLOCK << sizeClass;
+		int handle;
+		if (freeCounts[sizeClass] > 0) {
+			handle = freeBlocks[sizeClass][--freeCounts[sizeClass]];
+		} else {
+			int slab = bumpSlabs[sizeClass];
+			if (slab < 0 || bumpOffsets[sizeClass] + blockSize > slabSize) {
+				slab = bumpSlabs[sizeClass] = newSlab();
+				bumpOffsets[sizeClass] = 0;
+			}
+			int offset = bumpOffsets[sizeClass];
+			bumpOffsets[sizeClass] = offset + blockSize;
+			handle = slab << slabShift | offset >>> MIN_BLOCK_SHIFT;
+		}
+		// newSlab 이 실패하면 사용량을 바꾸지 않는다.
+		usedBytes += blockSize;
+		return handle;
+	}
+
+	// 같은 등급이면 블록을 그대로 쓸 수 있다.
+	static boolean fits(int oldLength, int newLength) {
+		return sizeClass(oldLength) == sizeClass(newLength);
+	}
+
+	void free(int handle, int length) {
+		int sizeClass = sizeClass(length);
+		usedBytes -= MIN_BLOCK << sizeClass;
+		int[] stack = freeBlocks[sizeClass];
+		int n = freeCounts[sizeClass];
+		if (stack == null) {
+			stack = freeBlocks[sizeClass] = new int[16];
+		} else if (n == stack.length) {
+			stack = freeBlocks[sizeClass] = Arrays.copyOf(stack, n * 2);
+		}
+		stack[n] = handle;
+		freeCounts[sizeClass] = n + 1;
+	}
+
+	// 모든 블록을 해제한다. 슬랩은 돌려주지 않고 다음 할당에 다시 배정한다.
+	void reset() {
+		if (idleSlabs.length < slabCount) {
+			idleSlabs = new int[slabCount];
+		}
+		for (int i = 0; i < slabCount; i++) {
+			idleSlabs[i] = i;
+		}
+		idleCount = slabCount;
+		Arrays.fill(bumpSlabs, -1);
+		Arrays.fill(freeCounts, 0);
+		Arrays.fill(freeBlocks, null);
+		usedBytes = 0;
+	}
+
+	private int newSlab() {
+		if (idleCount > 0) {
+			return idleSlabs[--idleCount];
+		}
+		if (slabCount == maximumSlabs) {
+			throw new IllegalStateException("Arena is full: " + slabCount + " slabs");
+		}
+		if (slabCount == slabs.length) {
+			slabs = Arrays.copyOf(slabs, slabCount * 2);
+		}
+		slabs[slabCount] = ByteBuffer.allocateDirect(slabSize);
+		return slabCount++;
+	}
+
+	void write(int handle, byte[] src, int offset, int length) {
+		ByteBuffer b = slabs[handle >>> slabShift].duplicate();
+		b.position(offsetOf(handle));
+		b.put(src, offset, length);
+	}
+
+	// src 의 position 은 바꾸지 않는다.
+	void write(int handle, ByteBuffer src) {
+		ByteBuffer b = slabs[handle >>> slabShift].duplicate();
+		b.position(offsetOf(handle));
+		b.put(src.duplicate());
+	}
+
+	void read(int handle, byte[] dst, int offset, int length) {
+		ByteBuffer b = slabs[handle >>> slabShift].duplicate();
+		b.position(offsetOf(handle));
+		b.get(dst, offset, length);
+	}
+
+	// 블록을 복사하지 않고 가리키는 읽기 전용 버퍼
+	ByteBuffer view(int handle, int length) {
+		ByteBuffer b = slabs[handle >>> slabShift].asReadOnlyBuffer();
+		int offset = offsetOf(handle);
+		b.limit(offset + length);
+		b.position(offset);
+		return b.slice();
+	}
+
+	private int offsetOf(int handle) {
+		return (handle & ((1 << slabShift) - 1)) << MIN_BLOCK_SHIFT;
+	}
+
+	// 힙 밖에 할당한 슬랩의 바이트 수
+	long capacityBytes() {
+		return (long) slabCount * slabSize;
+	}
+
+	// 할당된 블록의 바이트 수, 등급으로 올림한 크기이다.
+	long usedBytes() {
+		return usedBytes;
+	}
+
+	// 힙에 있는 관리용 배열과 ByteBuffer 객체의 바이트 수
+	long retainedBytes() {
+		long bytes = Footprint.arrayBytes(slabs.length, 4) + Footprint.arrayBytes(idleSlabs.length, 4)
+				+ (long) slabCount * SLAB_OBJECT_BYTES;
+		for (int[] stack : freeBlocks) {
+			if (stack != null) {
+				bytes += Footprint.arrayBytes(stack.length, 4);
+			}
+		}
+		return bytes;
+	}
+}
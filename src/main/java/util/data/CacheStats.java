@@ -0,0 +1,73 @@
+package util.data;
+
+// 캐시 통계의 스냅샷.
+public final class CacheStats {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long loadSuccessCount;
+	private final long loadFailureCount;
+	private final long totalLoadTime;
+
+	public CacheStats(long hitCount, long missCount, long evictionCount) {
+		this(hitCount, missCount, evictionCount, 0, 0, 0);
+	}
+
+	public CacheStats(long hitCount, long missCount, long evictionCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.loadSuccessCount = loadSuccessCount;
+		this.loadFailureCount = loadFailureCount;
+		this.totalLoadTime = totalLoadTime;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	// 최대 크기를 넘어 제거된 항목 수, GC 로 정리되거나 만료된 항목은 포함하지 않는다.
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	// 요청이 없으면 1 이다.
+	public double getHitRate() {
+		long requestCount = getRequestCount();
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	public long getLoadSuccessCount() {
+		return loadSuccessCount;
+	}
+
+	// 예외를 던졌거나 null 을 돌려준 로드 수
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	// 로드에 걸린 시간의 합(나노초)
+	public long getTotalLoadTime() {
+		return totalLoadTime;
+	}
+
+	// 로드 한 번의 평균 시간(나노초), 로드가 없으면 0 이다.
+	public double getAverageLoadPenalty() {
+		long loadCount = loadSuccessCount + loadFailureCount;
+		return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats[hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+				+ ", loadSuccessCount=" + loadSuccessCount + ", loadFailureCount=" + loadFailureCount + ", totalLoadTime=" + totalLoadTime + "]";
+	}
+}
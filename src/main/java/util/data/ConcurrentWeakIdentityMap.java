@@ -0,0 +1,659 @@
+package util.data;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// WeakIdentityMap 의 스레드 안전 버전.
+// 테이블을 세그먼트로 나누어 쓰기는 세그먼트 락으로 직렬화하고, 읽기는 락 없이 volatile 읽기만 수행한다.
+// 반복자는 ConcurrentModificationException 을 던지지 않는 약한 일관성(weakly consistent)을 가진다.
+public class ConcurrentWeakIdentityMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+	private static final int DEFAULT_EXPECTED_SIZE = 16;
+	private static final int MAXIMUM_SEGMENTS = 1 << 16;
+	// 읽기는 락을 잡지 않도록 쓰기 연산에서만 정리한다.
+	private static final ExpungePolicy DEFAULT_EXPUNGE_POLICY = ExpungePolicy.bounded(ExpungePolicy.UNBOUNDED, false);
+	// footprint() 의 Node 크기
+	private static final int NODE_BYTES = 40;
+
+	private final Segment[] segments;
+	// 해시의 상위 비트로 세그먼트를, 하위 비트로 세그먼트 안의 슬롯을 고른다.
+	private final int segmentShift;
+	private final int segmentMask;
+	private final ExpungePolicy expungePolicy;
+
+	transient private final ToIntFunction<Object> hashCodeMapper;
+	transient private final ReferenceQueue<K> refQueue = new ReferenceQueue<K>();
+
+	transient private Set<K> keySet;
+	transient private Collection<V> values;
+	transient private Set<Map.Entry<K, V>> entrySet;
+
+	public ConcurrentWeakIdentityMap() {
+		this(DEFAULT_EXPECTED_SIZE);
+	}
+
+	public ConcurrentWeakIdentityMap(int expectedSize) {
+		this(expectedSize, Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	public ConcurrentWeakIdentityMap(int expectedSize, int concurrencyLevel) {
+		this(expectedSize, concurrencyLevel, DEFAULT_EXPUNGE_POLICY);
+	}
+
+	public ConcurrentWeakIdentityMap(int expectedSize, int concurrencyLevel, ExpungePolicy expungePolicy) {
+		this(expectedSize, concurrencyLevel, expungePolicy, System::identityHashCode);
+	}
+
+	// WeakIdentityMap(ToIntFunction) 과 같이 키가 가진 id 를 해시로 쓴다. 키는 여전히 == 으로 비교한다.
+	public ConcurrentWeakIdentityMap(int expectedSize, int concurrencyLevel, ExpungePolicy expungePolicy, ToIntFunction<? super K> hashFunction) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+		}
+		if (concurrencyLevel <= 0) {
+			throw new IllegalArgumentException("Illegal concurrency level: " + concurrencyLevel);
+		}
+		int segmentCount = 1;
+		int shift = 0;
+		while (segmentCount < concurrencyLevel && segmentCount < MAXIMUM_SEGMENTS) {
+			segmentCount <<= 1;
+			shift++;
+		}
+		this.expungePolicy = Objects.requireNonNull(expungePolicy);
+		@SuppressWarnings("unchecked")
+		ToIntFunction<Object> mapper = (ToIntFunction<Object>) (ToIntFunction<?>) Objects.requireNonNull(hashFunction);
+		this.hashCodeMapper = mapper;
+		segmentShift = 32 - shift;
+		segmentMask = segmentCount - 1;
+		segments = newSegments(segmentCount);
+		int segmentExpectedSize = (expectedSize + segmentCount - 1) / segmentCount;
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(WeakIdentityTable.capacityFor(segmentExpectedSize));
+		}
+	}
+
+	// 제네릭 내부 클래스의 배열은 바로 만들 수 없다.
+	@SuppressWarnings("unchecked")
+	private Segment[] newSegments(int length) {
+		return (Segment[]) new ConcurrentWeakIdentityMap<?, ?>.Segment[length];
+	}
+
+	private Segment segmentFor(int spreadHash) {
+		return segments[(spreadHash >>> segmentShift) & segmentMask];
+	}
+
+	private int hash(Object key) {
+		return WeakIdentityTable.spread(hashCodeMapper.applyAsInt(key));
+	}
+
+	// GC 된 키 중 정리되지 않은 것을 모두 정리하고 정리한 수를 돌려준다.
+	// 다른 스레드의 읽기, 쓰기와 동시에 호출해도 안전하므로 유지보수 스레드에서 주기적으로 호출할 수 있다.
+	public int drainCleared() {
+		return expunge(ExpungePolicy.UNBOUNDED);
+	}
+
+	public ExpungePolicy getExpungePolicy() {
+		return expungePolicy;
+	}
+
+	// 맵이 차지하는 메모리를 구조별로 추정한다. 락을 잡지 않으므로 동시에 바뀌는 중이면 근사치이다.
+	public Footprint footprint() {
+		long entries = 0;
+		long capacity = 0;
+		long slots = 0;
+		for (Segment segment : segments) {
+			int length = segment.table.length();
+			capacity += length;
+			slots += Footprint.arrayBytes(length, 4);
+			entries += segment.count;
+		}
+		Footprint footprint = new Footprint((int) Math.min(entries, Integer.MAX_VALUE), (int) Math.min(capacity, Integer.MAX_VALUE));
+		footprint.add("segments", Footprint.arrayBytes(segments.length, 4) + (long) segments.length * WeakSegment.SEGMENT_BYTES);
+		footprint.add("slots", slots);
+		footprint.add("nodes", entries * NODE_BYTES);
+		return footprint;
+	}
+
+	// GC 된 키를 정리한다. 세그먼트 락을 잡기 전에 호출해야 한다.
+	private void expunge() {
+		expunge(expungePolicy.getMaxPerOperation());
+	}
+
+	private void expungeOnRead() {
+		if (expungePolicy.isExpungeOnRead()) {
+			expunge(expungePolicy.getMaxPerOperation());
+		}
+	}
+
+	private int expunge(int max) {
+		int removed = 0;
+		for (int n = 0; n < max; n++) {
+			Reference<? extends K> ref = refQueue.poll();
+			if (ref == null) {
+				break;
+			}
+			@SuppressWarnings("unchecked")
+			Node<K, V> node = (Node<K, V>) ref;
+			if (segmentFor(node.hash).remove(node)) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public V get(Object key) {
+		if (key == null) {
+			return null;
+		}
+		expungeOnRead();
+		int hash = hash(key);
+		return segmentFor(hash).get(key, hash);
+	}
+
+	@Override
+	public V getOrDefault(Object key, V defaultValue) {
+		V value = get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		expungeOnRead();
+		for (Segment segment : segments) {
+			AtomicReferenceArray<Object> tab = segment.table;
+			for (int i = 0, n = tab.length(); i < n; i++) {
+				Object slot = tab.get(i);
+				if (slot instanceof Node) {
+					Node<?, ?> node = (Node<?, ?>) slot;
+					if (node.get() != null && value.equals(node.value)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, false);
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, true);
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+			put(e.getKey(), e.getValue());
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (key == null) {
+			return null;
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).remove(key, hash, null);
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (key == null || value == null) {
+			return false;
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).remove(key, hash, value) != null;
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (key == null || oldValue == null || newValue == null) {
+			throw new NullPointerException();
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).replace(key, hash, oldValue, newValue) != null;
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).replace(key, hash, null, value);
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		if (key == null || mappingFunction == null) {
+			throw new NullPointerException();
+		}
+		int hash = hash(key);
+		Segment segment = segmentFor(hash);
+		// 이미 있는 경우 락 없이 끝낸다.
+		V value = segment.get(key, hash);
+		if (value != null) {
+			return value;
+		}
+		expunge();
+		return segment.compute(key, hash, (k, v) -> v == null ? mappingFunction.apply(k) : v);
+	}
+
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (key == null || remappingFunction == null) {
+			throw new NullPointerException();
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).compute(key, hash, (k, v) -> v == null ? null : remappingFunction.apply(k, v));
+	}
+
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (key == null || remappingFunction == null) {
+			throw new NullPointerException();
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).compute(key, hash, remappingFunction);
+	}
+
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (key == null || value == null || remappingFunction == null) {
+			throw new NullPointerException();
+		}
+		expunge();
+		int hash = hash(key);
+		return segmentFor(hash).compute(key, hash, (k, v) -> v == null ? value : remappingFunction.apply(v, value));
+	}
+
+	@Override
+	public int size() {
+		expungeOnRead();
+		long sum = 0;
+		for (Segment segment : segments) {
+			sum += segment.count;
+		}
+		return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		expungeOnRead();
+		for (Segment segment : segments) {
+			if (segment.count != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		expunge();
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	@Override
+	public Set<K> keySet() {
+		Set<K> ks = keySet;
+		if (ks == null) {
+			ks = new KeySet();
+			keySet = ks;
+		}
+		return ks;
+	}
+
+	@Override
+	public Collection<V> values() {
+		Collection<V> vs = values;
+		if (vs == null) {
+			vs = new Values();
+			values = vs;
+		}
+		return vs;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		if (es == null) {
+			es = new EntrySet();
+			entrySet = es;
+		}
+		return es;
+	}
+
+	// 키를 동일성으로 찾는 세그먼트. 노드를 지우면 값도 지워 노드를 이미 찾은 읽기 스레드가 삭제를 알 수 있게 한다.
+	@SuppressWarnings("serial")
+	final class Segment extends WeakSegment {
+		Segment(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		int hashOf(Reference<?> ref) {
+			return ((Node<?, ?>) ref).hash;
+		}
+
+		@Override
+		boolean matches(Reference<?> ref, Object key, int hash) {
+			return ref.get() == key;
+		}
+
+		@Override
+		void onRemove(Reference<?> ref) {
+			((Node<?, ?>) ref).value = null;
+		}
+
+		@SuppressWarnings("unchecked")
+		V get(Object key, int hash) {
+			Node<K, V> node = (Node<K, V>) find(key, hash);
+			return node == null ? null : node.value;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Node<K, V> nodeAt(AtomicReferenceArray<Object> tab, int index) {
+			return (Node<K, V>) tab.get(index);
+		}
+
+		V put(K key, int hash, V value, boolean onlyIfAbsent) {
+			lock();
+			try {
+				AtomicReferenceArray<Object> tab = table;
+				int index = indexOf(tab, key, hash);
+				if (index >= 0) {
+					Node<K, V> node = nodeAt(tab, index);
+					V old = node.value;
+					if (!onlyIfAbsent) {
+						node.value = value;
+					}
+					return old;
+				}
+				insert(tab, -index - 1, new Node<K, V>(key, hash, value, refQueue));
+				return null;
+			} finally {
+				unlock();
+			}
+		}
+
+		V remove(Object key, int hash, Object expected) {
+			lock();
+			try {
+				AtomicReferenceArray<Object> tab = table;
+				int index = indexOf(tab, key, hash);
+				if (index < 0) {
+					return null;
+				}
+				V old = nodeAt(tab, index).value;
+				if (expected != null && !expected.equals(old)) {
+					return null;
+				}
+				removeAt(tab, index);
+				return old;
+			} finally {
+				unlock();
+			}
+		}
+
+		// expected 가 null 이면 무조건 교체한다. 교체 전 값을 돌려준다.
+		V replace(K key, int hash, V expected, V value) {
+			lock();
+			try {
+				AtomicReferenceArray<Object> tab = table;
+				int index = indexOf(tab, key, hash);
+				if (index < 0) {
+					return null;
+				}
+				Node<K, V> node = nodeAt(tab, index);
+				V old = node.value;
+				if (expected != null && !expected.equals(old)) {
+					return null;
+				}
+				node.value = value;
+				return old;
+			} finally {
+				unlock();
+			}
+		}
+
+		V compute(K key, int hash, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+			lock();
+			try {
+				AtomicReferenceArray<Object> tab = table;
+				int index = indexOf(tab, key, hash);
+				Node<K, V> node = index >= 0 ? nodeAt(tab, index) : null;
+				V old = node == null ? null : node.value;
+				V value = remappingFunction.apply(key, old);
+				// 락은 재진입하므로 함수 안에서 같은 키를 지우거나 넣었을 수 있고 재해시로 테이블이 바뀌었을 수도 있다.
+				// 찾아 둔 노드가 테이블에 남아 있다고 가정하지 않고 다시 찾는다.
+				tab = table;
+				index = indexOf(tab, key, hash);
+				if (value == null) {
+					if (index >= 0) {
+						removeAt(tab, index);
+					}
+				} else if (index >= 0) {
+					nodeAt(tab, index).value = value;
+				} else {
+					insert(tab, -index - 1, new Node<K, V>(key, hash, value, refQueue));
+				}
+				return value;
+			} finally {
+				unlock();
+			}
+		}
+	}
+
+	// 키의 약한 참조가 곧 테이블 항목이다.
+	static final class Node<K, V> extends WeakReference<K> {
+		final int hash;
+		volatile V value;
+
+		Node(K key, int hash, V value, ReferenceQueue<? super K> q) {
+			super(key, q);
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+
+	abstract class BaseIterator {
+		private int segmentIndex;
+		private AtomicReferenceArray<Object> tab;
+		private int index;
+		// hasNext 와 next 사이에 GC 되지 않도록 다음 키를 강하게 참조한다.
+		private K nextKey;
+		private V nextValue;
+		private K lastKey;
+
+		public final boolean hasNext() {
+			while (nextKey == null) {
+				if (tab == null || index >= tab.length()) {
+					if (segmentIndex >= segments.length) {
+						return false;
+					}
+					tab = segments[segmentIndex++].table;
+					index = 0;
+					continue;
+				}
+				Object slot = tab.get(index++);
+				if (slot instanceof Node) {
+					@SuppressWarnings("unchecked")
+					Node<K, V> node = (Node<K, V>) slot;
+					K key = node.get();
+					V value = node.value;
+					if (key != null && value != null) {
+						nextKey = key;
+						nextValue = value;
+					}
+				}
+			}
+			return true;
+		}
+
+		final Map.Entry<K, V> nextEntry() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<K, V> entry = new IdentityEntry<>(nextKey, nextValue, ConcurrentWeakIdentityMap.this);
+			lastKey = nextKey;
+			nextKey = null;
+			nextValue = null;
+			return entry;
+		}
+
+		public final void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			ConcurrentWeakIdentityMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+
+	final class KeyIterator extends BaseIterator implements Iterator<K> {
+		public final K next() {
+			return nextEntry().getKey();
+		}
+	}
+
+	final class ValueIterator extends BaseIterator implements Iterator<V> {
+		public final V next() {
+			return nextEntry().getValue();
+		}
+	}
+
+	final class EntryIterator extends BaseIterator implements Iterator<Map.Entry<K, V>> {
+		public final Map.Entry<K, V> next() {
+			return nextEntry();
+		}
+	}
+
+	final class KeySet extends AbstractSet<K> {
+		public final int size() {
+			return ConcurrentWeakIdentityMap.this.size();
+		}
+
+		public final void clear() {
+			ConcurrentWeakIdentityMap.this.clear();
+		}
+
+		public final Iterator<K> iterator() {
+			return new KeyIterator();
+		}
+
+		public final boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		public final boolean remove(Object key) {
+			return ConcurrentWeakIdentityMap.this.remove(key) != null;
+		}
+
+		public final Spliterator<K> spliterator() {
+			return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.CONCURRENT | Spliterator.DISTINCT | Spliterator.NONNULL);
+		}
+	}
+
+	final class Values extends AbstractCollection<V> {
+		public final int size() {
+			return ConcurrentWeakIdentityMap.this.size();
+		}
+
+		public final void clear() {
+			ConcurrentWeakIdentityMap.this.clear();
+		}
+
+		public final Iterator<V> iterator() {
+			return new ValueIterator();
+		}
+
+		public final boolean contains(Object o) {
+			return containsValue(o);
+		}
+
+		public final Spliterator<V> spliterator() {
+			return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.CONCURRENT | Spliterator.NONNULL);
+		}
+	}
+
+	final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public final int size() {
+			return ConcurrentWeakIdentityMap.this.size();
+		}
+
+		public final void clear() {
+			ConcurrentWeakIdentityMap.this.clear();
+		}
+
+		public final Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		public final boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			V v = get(e.getKey());
+			return v != null && v.equals(e.getValue());
+		}
+
+		public final boolean remove(Object o) {
+			if (o instanceof Map.Entry) {
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				return ConcurrentWeakIdentityMap.this.remove(e.getKey(), e.getValue());
+			}
+			return false;
+		}
+
+		public final Spliterator<Map.Entry<K, V>> spliterator() {
+			return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.CONCURRENT | Spliterator.DISTINCT | Spliterator.NONNULL);
+		}
+	}
+}
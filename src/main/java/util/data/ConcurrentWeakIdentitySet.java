@@ -0,0 +1,114 @@
+package util.data;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+
+// WeakIdentitySet 의 스레드 안전 버전.
+// ConcurrentWeakIdentityMap 에 모든 키의 값으로 같은 Boolean.TRUE 를 넣어 구현하므로
+// 원소당 추가 비용은 노드의 값 필드 하나뿐이다. 반복자는 약한 일관성을 가진다.
+public class ConcurrentWeakIdentitySet<E> extends AbstractSet<E> implements Set<E> {
+	private final ConcurrentWeakIdentityMap<E, Boolean> map;
+	private final Set<E> keySet;
+
+	public ConcurrentWeakIdentitySet() {
+		this(new ConcurrentWeakIdentityMap<>());
+	}
+
+	public ConcurrentWeakIdentitySet(int expectedSize) {
+		this(new ConcurrentWeakIdentityMap<>(expectedSize));
+	}
+
+	public ConcurrentWeakIdentitySet(int expectedSize, int concurrencyLevel, ExpungePolicy expungePolicy) {
+		this(new ConcurrentWeakIdentityMap<>(expectedSize, concurrencyLevel, expungePolicy));
+	}
+
+	private ConcurrentWeakIdentitySet(ConcurrentWeakIdentityMap<E, Boolean> map) {
+		this.map = map;
+		this.keySet = map.keySet();
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return map.containsKey(o);
+	}
+
+	@Override
+	public boolean add(E e) {
+		return map.putIfAbsent(e, Boolean.TRUE) == null;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return map.remove(o) != null;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		boolean modified = false;
+		for (E e : c) {
+			if (map.putIfAbsent(e, Boolean.TRUE) == null) {
+				modified = true;
+			}
+		}
+		return modified;
+	}
+
+	// AbstractSet 은 크기에 따라 c.contains 로 이 집합을 순회하므로 c 의 원소를 직접 지운다.
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		boolean modified = false;
+		for (Object o : c) {
+			if (map.remove(o) != null) {
+				modified = true;
+			}
+		}
+		return modified;
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return keySet.iterator();
+	}
+
+	@Override
+	public Spliterator<E> spliterator() {
+		return keySet.spliterator();
+	}
+
+	// 원소는 동일성으로 비교하므로 equals 와 맞도록 identityHashCode 를 더한다.
+	@Override
+	public int hashCode() {
+		int h = 0;
+		for (E e : keySet) {
+			h += System.identityHashCode(e);
+		}
+		return h;
+	}
+
+	// GC 된 원소 중 정리되지 않은 것을 모두 정리하고 정리한 수를 돌려준다.
+	public int drainCleared() {
+		return map.drainCleared();
+	}
+
+	public ExpungePolicy getExpungePolicy() {
+		return map.getExpungePolicy();
+	}
+}
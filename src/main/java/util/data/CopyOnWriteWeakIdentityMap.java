@@ -0,0 +1,594 @@
+package util.data;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import util.data.WeakIdentityTable.IdentityWeakReference;
+
+// 쓰기는 드물고 읽기가 매우 많은 경우(클래스별 핸들러 등록 등)를 위한 스레드 안전 WeakIdentityMap.
+// 키의 약한 참조와 값을 번갈아 담은 배열 하나를 volatile 필드로 게시하고, 게시한 배열은 바꾸지 않는다.
+// 읽기는 그 필드를 한 번 읽고 탐사만 하므로 락, 할당, 추가 메모리 배리어가 없다.
+// 쓰기는 락 안에서 새 배열을 만들어 교체하며 이때 GC 된 키도 함께 빠진다. 쓰기 한 번의 비용은 O(n) 이다.
+// 읽기에서는 정리하지 않으므로 size 는 정리되지 않은 GC 된 키를 포함할 수 있다. 쓰기가 없으면 drainCleared() 를 호출한다.
+// 반복자는 만들 때의 배열을 순회하므로 ConcurrentModificationException 을 던지지 않는다.
+// ConcurrentHashMap 과 같이 null 키와 null 값은 넣을 수 없다. 락 없는 get 이 null 로 키가 없음을 알리므로
+// null 값을 허용하는 WeakIdentityMap 과 달리 NullPointerException 을 던진다.
+public class CopyOnWriteWeakIdentityMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+	// 빈 슬롯이 하나 있어 탐사가 끝난다.
+	private static final Object[] EMPTY_TABLE = new Object[2];
+	// 배열 길이는 슬롯 수의 두 배이므로 WeakIdentityTable 의 최대 슬롯 수의 절반까지만 쓴다.
+	private static final int MAXIMUM_CAPACITY = WeakIdentityTable.MAXIMUM_CAPACITY >> 1;
+
+	// 슬롯 i 의 키 참조는 [2i], 값은 [2i + 1] 에 있다. 사용률은 WeakIdentityTable 과 같이 2/3 이하이며 TOMBSTONE 은 없다.
+	private volatile Object[] table = EMPTY_TABLE;
+	private volatile int size;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	transient private final ToIntFunction<Object> hashCodeMapper;
+	transient private final ReferenceQueue<K> refQueue = new ReferenceQueue<K>();
+
+	transient private Set<K> keySet;
+	transient private Collection<V> values;
+	transient private Set<Map.Entry<K, V>> entrySet;
+
+	public CopyOnWriteWeakIdentityMap() {
+		this(WeakIdentityTable.IDENTITY_HASH);
+	}
+
+	// WeakIdentityMap(ToIntFunction) 과 같이 키가 가진 id 를 해시로 쓴다. 키는 여전히 == 으로 비교한다.
+	@SuppressWarnings("unchecked")
+	public CopyOnWriteWeakIdentityMap(ToIntFunction<? super K> hashFunction) {
+		this.hashCodeMapper = (ToIntFunction<Object>) (ToIntFunction<?>) Objects.requireNonNull(hashFunction);
+	}
+
+	// 키가 있으면 그 슬롯을, 없으면 비어 있는 슬롯을 -(index + 1) 로 돌려준다.
+	private static int indexOf(Object[] tab, Object key, int hashCode) {
+		int mask = (tab.length >> 1) - 1;
+		for (int i = WeakIdentityTable.spread(hashCode) & mask;; i = (i + 1) & mask) {
+			Object ref = tab[i << 1];
+			if (ref == null) {
+				return -(i + 1);
+			}
+			if (((Reference<?>) ref).get() == key) {
+				return i;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> V valueAt(Object[] tab, int index) {
+		return (V) tab[(index << 1) + 1];
+	}
+
+	@Override
+	public V get(Object key) {
+		if (key == null) {
+			return null;
+		}
+		Object[] tab = table;
+		int mask = (tab.length >> 1) - 1;
+		for (int i = WeakIdentityTable.spread(hashCodeMapper.applyAsInt(key)) & mask;; i = (i + 1) & mask) {
+			Object ref = tab[i << 1];
+			if (ref == null) {
+				return null;
+			}
+			if (((Reference<?>) ref).get() == key) {
+				return valueAt(tab, i);
+			}
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		Object[] tab = table;
+		for (int i = 0; i < tab.length; i += 2) {
+			Object ref = tab[i];
+			if (ref != null && ((Reference<?>) ref).get() != null && value.equals(tab[i + 1])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return put(key, value, false);
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		return put(key, value, true);
+	}
+
+	private V put(K key, V value, boolean onlyIfAbsent) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		int hashCode = hashCodeMapper.applyAsInt(key);
+		lock.lock();
+		try {
+			Object[] tab = table;
+			int index = indexOf(tab, key, hashCode);
+			V old = index >= 0 ? valueAt(tab, index) : null;
+			if (old == null || !onlyIfAbsent) {
+				store(key, hashCode, value);
+			}
+			return old;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 새 배열 하나로 모두 넣는다.
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		lock.lock();
+		try {
+			Object[] tab = copy(table, -1, m.size());
+			for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+				K key = e.getKey();
+				V value = e.getValue();
+				if (key == null || value == null) {
+					throw new NullPointerException();
+				}
+				set(tab, key, hashCodeMapper.applyAsInt(key), value);
+			}
+			publish(tab);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (key == null) {
+			return null;
+		}
+		int hashCode = hashCodeMapper.applyAsInt(key);
+		lock.lock();
+		try {
+			Object[] tab = table;
+			int index = indexOf(tab, key, hashCode);
+			if (index < 0) {
+				return null;
+			}
+			V old = valueAt(tab, index);
+			publish(copy(tab, index, 0));
+			return old;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (key == null || value == null) {
+			return false;
+		}
+		int hashCode = hashCodeMapper.applyAsInt(key);
+		lock.lock();
+		try {
+			Object[] tab = table;
+			int index = indexOf(tab, key, hashCode);
+			if (index < 0 || !value.equals(valueAt(tab, index))) {
+				return false;
+			}
+			publish(copy(tab, index, 0));
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (key == null || oldValue == null || newValue == null) {
+			throw new NullPointerException();
+		}
+		int hashCode = hashCodeMapper.applyAsInt(key);
+		lock.lock();
+		try {
+			int index = indexOf(table, key, hashCode);
+			if (index < 0 || !oldValue.equals(valueAt(table, index))) {
+				return false;
+			}
+			store(key, hashCode, newValue);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		int hashCode = hashCodeMapper.applyAsInt(key);
+		lock.lock();
+		try {
+			int index = indexOf(table, key, hashCode);
+			if (index < 0) {
+				return null;
+			}
+			V old = valueAt(table, index);
+			store(key, hashCode, value);
+			return old;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 이미 있으면 락 없이 끝낸다. 함수는 락 안에서 한 번만 호출된다.
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		if (key == null || mappingFunction == null) {
+			throw new NullPointerException();
+		}
+		V value = get(key);
+		if (value != null) {
+			return value;
+		}
+		return compute(key, (k, v) -> v == null ? mappingFunction.apply(k) : v);
+	}
+
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (key == null || remappingFunction == null) {
+			throw new NullPointerException();
+		}
+		return compute(key, (k, v) -> v == null ? null : remappingFunction.apply(k, v));
+	}
+
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (key == null || remappingFunction == null) {
+			throw new NullPointerException();
+		}
+		int hashCode = hashCodeMapper.applyAsInt(key);
+		lock.lock();
+		try {
+			Object[] tab = table;
+			int index = indexOf(tab, key, hashCode);
+			V old = index >= 0 ? valueAt(tab, index) : null;
+			V value = remappingFunction.apply(key, old);
+			// 함수가 맵을 바꾸지 않았고 같은 값을 돌려주면 배열을 다시 만들지 않는다.
+			if (value == old && tab == table) {
+				return value;
+			}
+			// 함수 안에서 이 맵을 바꿨을 수 있으므로 현재 배열에서 다시 찾는다.
+			if (value != null) {
+				store(key, hashCode, value);
+			} else if (old != null) {
+				tab = table;
+				index = indexOf(tab, key, hashCode);
+				if (index >= 0) {
+					publish(copy(tab, index, 0));
+				}
+			}
+			return value;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (key == null || value == null || remappingFunction == null) {
+			throw new NullPointerException();
+		}
+		return compute(key, (k, v) -> v == null ? value : remappingFunction.apply(v, value));
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			while (refQueue.poll() != null) {
+			}
+			publish(EMPTY_TABLE);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 게시된 배열과 키 참조의 바이트 수를 추정한다. 쓰기 중에는 복사본만큼 잠시 더 쓴다.
+	public Footprint footprint() {
+		Object[] tab = table;
+		int n = size;
+		Footprint footprint = new Footprint(n, tab.length >> 1);
+		footprint.add("table", Footprint.arrayBytes(tab.length, 4));
+		footprint.add("keyReferences", (long) n * Footprint.WEAK_REFERENCE_BYTES);
+		return footprint;
+	}
+
+	// GC 된 키를 빼고 배열을 다시 만든다. 정리한 수를 돌려준다.
+	// 쓰기가 드문 맵에서 GC 된 키와 그 값을 놓아 주려면 유지보수 스레드에서 주기적으로 호출한다.
+	public int drainCleared() {
+		if (refQueue.poll() == null) {
+			return 0;
+		}
+		lock.lock();
+		try {
+			int before = size;
+			publish(copy(table, -1, 0));
+			return before - size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// 락 안에서 호출한다. GC 된 키를 빼고 key 의 값을 바꾸거나 넣은 새 배열을 게시한다.
+	private void store(K key, int hashCode, V value) {
+		Object[] tab = copy(table, -1, 1);
+		set(tab, key, hashCode, value);
+		publish(tab);
+	}
+
+	// 게시 전의 배열에 값을 쓴다. 없는 키면 새 참조를 만들어 넣는다.
+	private void set(Object[] tab, K key, int hashCode, V value) {
+		int index = indexOf(tab, key, hashCode);
+		if (index < 0) {
+			index = -index - 1;
+			tab[index << 1] = new IdentityWeakReference<K>(key, hashCode, refQueue);
+		}
+		tab[(index << 1) + 1] = value;
+	}
+
+	// src 의 살아있는 항목 중 skip 슬롯을 뺀 것을 extra 개가 더 들어갈 크기의 새 배열로 옮긴다.
+	// 참조 객체는 그대로 옮기므로 키마다 새로 할당하지 않는다.
+	// GC 된 키는 여기서 빠지므로 큐를 먼저 비운다. 복사 중에 들어온 참조는 큐에 남아 다음 쓰기에서 정리된다.
+	private Object[] copy(Object[] src, int skip, int extra) {
+		while (refQueue.poll() != null) {
+		}
+		int live = 0;
+		for (int i = 0; i < src.length; i += 2) {
+			Object ref = src[i];
+			if (ref != null && i != skip << 1 && ((Reference<?>) ref).get() != null) {
+				live++;
+			}
+		}
+		Object[] dst = new Object[Math.min(WeakIdentityTable.capacityFor(live + extra), MAXIMUM_CAPACITY) << 1];
+		int mask = (dst.length >> 1) - 1;
+		// GC 는 참조를 되살리지 않으므로 두 번째 순회의 항목은 첫 번째 순회의 부분 집합이다.
+		for (int i = 0; i < src.length; i += 2) {
+			Object ref = src[i];
+			if (ref != null && i != skip << 1 && ((Reference<?>) ref).get() != null) {
+				int j = WeakIdentityTable.spread(ref.hashCode()) & mask;
+				while (dst[j << 1] != null) {
+					j = (j + 1) & mask;
+				}
+				dst[j << 1] = ref;
+				dst[(j << 1) + 1] = src[i + 1];
+			}
+		}
+		return dst;
+	}
+
+	// 락 안에서 호출한다.
+	private void publish(Object[] tab) {
+		int n = 0;
+		for (int i = 0; i < tab.length; i += 2) {
+			if (tab[i] != null) {
+				n++;
+			}
+		}
+		size = n;
+		table = tab;
+	}
+
+	// 배열을 직접 순회하므로 항목 객체를 만들지 않는다.
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		Objects.requireNonNull(action);
+		Object[] tab = table;
+		for (int i = 0; i < tab.length; i += 2) {
+			Object ref = tab[i];
+			if (ref != null) {
+				@SuppressWarnings("unchecked")
+				K key = ((Reference<K>) ref).get();
+				if (key != null) {
+					action.accept(key, valueAt(tab, i >> 1));
+				}
+			}
+		}
+	}
+
+	@Override
+	public Set<K> keySet() {
+		Set<K> ks = keySet;
+		if (ks == null) {
+			ks = new KeySet();
+			keySet = ks;
+		}
+		return ks;
+	}
+
+	@Override
+	public Collection<V> values() {
+		Collection<V> vs = values;
+		if (vs == null) {
+			vs = new Values();
+			values = vs;
+		}
+		return vs;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		Set<Map.Entry<K, V>> es = entrySet;
+		if (es == null) {
+			es = new EntrySet();
+			entrySet = es;
+		}
+		return es;
+	}
+
+	abstract class BaseIterator {
+		private final Object[] tab = table;
+		private int index;
+		// hasNext 와 next 사이에 GC 되지 않도록 다음 키를 강하게 참조한다.
+		private K nextKey;
+		private V nextValue;
+		private K lastKey;
+
+		public final boolean hasNext() {
+			while (nextKey == null) {
+				if (index >= tab.length) {
+					return false;
+				}
+				Object ref = tab[index];
+				if (ref != null) {
+					@SuppressWarnings("unchecked")
+					K key = ((Reference<K>) ref).get();
+					if (key != null) {
+						nextKey = key;
+						nextValue = valueAt(tab, index >> 1);
+					}
+				}
+				index += 2;
+			}
+			return true;
+		}
+
+		final Map.Entry<K, V> nextEntry() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<K, V> entry = new IdentityEntry<>(nextKey, nextValue, CopyOnWriteWeakIdentityMap.this);
+			lastKey = nextKey;
+			nextKey = null;
+			nextValue = null;
+			return entry;
+		}
+
+		public final void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			CopyOnWriteWeakIdentityMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+
+	final class KeyIterator extends BaseIterator implements Iterator<K> {
+		public final K next() {
+			return nextEntry().getKey();
+		}
+	}
+
+	final class ValueIterator extends BaseIterator implements Iterator<V> {
+		public final V next() {
+			return nextEntry().getValue();
+		}
+	}
+
+	final class EntryIterator extends BaseIterator implements Iterator<Map.Entry<K, V>> {
+		public final Map.Entry<K, V> next() {
+			return nextEntry();
+		}
+	}
+
+	final class KeySet extends AbstractSet<K> {
+		public final int size() {
+			return CopyOnWriteWeakIdentityMap.this.size();
+		}
+
+		public final void clear() {
+			CopyOnWriteWeakIdentityMap.this.clear();
+		}
+
+		public final Iterator<K> iterator() {
+			return new KeyIterator();
+		}
+
+		public final boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		public final boolean remove(Object key) {
+			return CopyOnWriteWeakIdentityMap.this.remove(key) != null;
+		}
+	}
+
+	final class Values extends AbstractCollection<V> {
+		public final int size() {
+			return CopyOnWriteWeakIdentityMap.this.size();
+		}
+
+		public final void clear() {
+			CopyOnWriteWeakIdentityMap.this.clear();
+		}
+
+		public final Iterator<V> iterator() {
+			return new ValueIterator();
+		}
+
+		public final boolean contains(Object o) {
+			return containsValue(o);
+		}
+	}
+
+	final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		public final int size() {
+			return CopyOnWriteWeakIdentityMap.this.size();
+		}
+
+		public final void clear() {
+			CopyOnWriteWeakIdentityMap.this.clear();
+		}
+
+		public final Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		public final boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			V v = get(e.getKey());
+			return v != null && v.equals(e.getValue());
+		}
+
+		public final boolean remove(Object o) {
+			if (o instanceof Map.Entry) {
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				return CopyOnWriteWeakIdentityMap.this.remove(e.getKey(), e.getValue());
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package util.data;
+
+// 최대 크기를 넘었을 때 제거할 항목을 고르는 방식.
+// LRU 는 가장 오래 접근하지 않은 항목을 제거한다.
+// TINY_LFU 는 작은 LRU 창(window)과 빈도 스케치로 새 항목의 진입 여부를 정하는 W-TinyLFU 방식으로,
+// 한 번만 접근하는 항목이 자주 쓰는 항목을 밀어내지 않는다.
+public enum EvictionPolicy {
+	LRU,
+	TINY_LFU
+}
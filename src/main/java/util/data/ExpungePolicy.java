@@ -0,0 +1,53 @@
+package util.data;
+
+// GC 된 키를 정리(expunge)하는 시점과 양을 정한다.
+// 큰 GC 직후 한 호출이 수천 건의 정리를 떠안지 않도록 연산당 처리량을 제한할 수 있고,
+// 읽기 연산에서는 정리를 건너뛰고 drainCleared() 를 별도로 호출하게 할 수도 있다.
+public final class ExpungePolicy {
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	private static final ExpungePolicy EAGER = new ExpungePolicy(UNBOUNDED, true);
+	private static final ExpungePolicy MANUAL = new ExpungePolicy(0, false);
+
+	// 연산 한 번에 처리하는 최대 참조 수
+	private final int maxPerOperation;
+	// 읽기 연산(get, containsKey, size 등)에서도 정리할지 여부
+	private final boolean expungeOnRead;
+
+	private ExpungePolicy(int maxPerOperation, boolean expungeOnRead) {
+		this.maxPerOperation = maxPerOperation;
+		this.expungeOnRead = expungeOnRead;
+	}
+
+	// 모든 연산에서 큐를 모두 비운다.
+	public static ExpungePolicy eager() {
+		return EAGER;
+	}
+
+	// 쓰기 연산마다 최대 maxPerOperation 개를 정리한다. expungeOnRead 이면 읽기 연산에서도 정리한다.
+	public static ExpungePolicy bounded(int maxPerOperation, boolean expungeOnRead) {
+		if (maxPerOperation < 0) {
+			throw new IllegalArgumentException("Illegal max per operation: " + maxPerOperation);
+		}
+		return new ExpungePolicy(maxPerOperation, expungeOnRead);
+	}
+
+	// 자동으로 정리하지 않는다. drainCleared() 를 주기적으로 호출해야 한다.
+	public static ExpungePolicy manual() {
+		return MANUAL;
+	}
+
+	public int getMaxPerOperation() {
+		return maxPerOperation;
+	}
+
+	public boolean isExpungeOnRead() {
+		return expungeOnRead;
+	}
+
+	@Override
+	public String toString() {
+		return "ExpungePolicy[maxPerOperation=" + (maxPerOperation == UNBOUNDED ? "unbounded" : maxPerOperation)
+				+ ", expungeOnRead=" + expungeOnRead + "]";
+	}
+}
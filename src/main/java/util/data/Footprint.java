@@ -0,0 +1,93 @@
+package util.data;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 맵이 차지하는 메모리를 구조별로 나눈 추정치. 힙 덤프 없이 테이블 배치로부터 계산한다.
+// 압축 OOP 를 쓰는 64비트 HotSpot(객체 헤더 12 바이트, 8 바이트 정렬) 기준이며 키와 값 객체 자체는 포함하지 않는다.
+// 용량 계획이나 항목당 바이트 수를 지키는 회귀 테스트에 쓴다.
+public final class Footprint {
+	// 객체 헤더, 참조 필드 4개, hashCode 필드. SoftReference 는 timestamp 필드가 더해진다.
+	static final int WEAK_REFERENCE_BYTES = 32;
+	static final int SOFT_REFERENCE_BYTES = 48;
+
+	private final int entries;
+	private final int capacity;
+	private final Map<String, Long> heap = new LinkedHashMap<>();
+	private final Map<String, Long> offHeap = new LinkedHashMap<>();
+
+	Footprint(int entries, int capacity) {
+		this.entries = entries;
+		this.capacity = capacity;
+	}
+
+	static long arrayBytes(int length, int elementBytes) {
+		return (16 + (long) length * elementBytes + 7) & ~7L;
+	}
+
+	static int referenceBytes(ReferenceStrength strength) {
+		return strength == ReferenceStrength.SOFT ? SOFT_REFERENCE_BYTES : WEAK_REFERENCE_BYTES;
+	}
+
+	// 같은 이름으로 여러 번 더하면 합친다.
+	void add(String name, long bytes) {
+		heap.merge(name, bytes, Long::sum);
+	}
+
+	void addOffHeap(String name, long bytes) {
+		offHeap.merge(name, bytes, Long::sum);
+	}
+
+	// 정리되지 않은 GC 된 키의 항목도 메모리를 차지하므로 포함한다.
+	public int getEntries() {
+		return entries;
+	}
+
+	// 모든 세그먼트의 슬롯 수
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHeapBytes() {
+		long sum = 0;
+		for (long bytes : heap.values()) {
+			sum += bytes;
+		}
+		return sum;
+	}
+
+	public long getOffHeapBytes() {
+		long sum = 0;
+		for (long bytes : offHeap.values()) {
+			sum += bytes;
+		}
+		return sum;
+	}
+
+	// 항목이 없으면 0 이다.
+	public double getHeapBytesPerEntry() {
+		return entries == 0 ? 0.0 : (double) getHeapBytes() / entries;
+	}
+
+	// 구조 이름별 바이트 수, 더한 순서를 유지한다.
+	public Map<String, Long> getHeapBreakdown() {
+		return Collections.unmodifiableMap(heap);
+	}
+
+	public Map<String, Long> getOffHeapBreakdown() {
+		return Collections.unmodifiableMap(offHeap);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Footprint[entries=").append(entries).append(", capacity=").append(capacity)
+				.append(", heapBytes=").append(getHeapBytes());
+		heap.forEach((name, bytes) -> sb.append(", ").append(name).append('=').append(bytes));
+		if (!offHeap.isEmpty()) {
+			sb.append(", offHeapBytes=").append(getOffHeapBytes());
+			offHeap.forEach((name, bytes) -> sb.append(", ").append(name).append('=').append(bytes));
+		}
+		return sb.append(']').toString();
+	}
+}
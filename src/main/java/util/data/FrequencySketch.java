@@ -0,0 +1,94 @@
+package util.data;
+
+import java.util.Arrays;
+
+// TinyLFU 의 접근 빈도 추정용 count-min 스케치.
+// long 하나에 4비트 카운터 16개를 담고 해시마다 4개의 카운터를 증가시켜 가장 작은 값을 빈도로 본다.
+// 증가 횟수가 표본 크기에 이르면 모든 카운터를 반으로 줄여 오래된 빈도가 계속 남지 않게 한다.
+final class FrequencySketch {
+	private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int MAXIMUM_FREQUENCY = 15;
+	private static final int MINIMUM_CAPACITY = 16;
+	private static final int MAXIMUM_CAPACITY = 1 << 26;
+
+	// 항목 수에 맞춰 ensureCapacity 로 늘린다.
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int additions;
+
+	FrequencySketch() {
+		table = new long[MINIMUM_CAPACITY];
+		tableMask = MINIMUM_CAPACITY - 1;
+		sampleSize = MINIMUM_CAPACITY * 10;
+	}
+
+	// 캐시에 있는 항목 수만큼 카운터를 갖도록 늘린다. 줄이지는 않는다.
+	// 최대 크기로 미리 만들면 작게 쓰이는 캐시나 가중치로 제한한 캐시가 쓰지 않을 메모리를 차지하므로 항목이 늘 때 키운다.
+	// 인덱스는 해시의 하위 비트이므로 기존 배열을 새 배열의 각 구간에 복사하면 모든 해시의 빈도가 그대로 유지된다.
+	void ensureCapacity(long expectedSize) {
+		int length = table.length;
+		if (expectedSize <= length || length == MAXIMUM_CAPACITY) {
+			return;
+		}
+		int capacity = (int) Math.min(expectedSize, MAXIMUM_CAPACITY);
+		capacity = Integer.highestOneBit(capacity - 1) << 1;
+		long[] grown = Arrays.copyOf(table, capacity);
+		for (int i = length; i < capacity; i += length) {
+			System.arraycopy(table, 0, grown, i, length);
+		}
+		table = grown;
+		tableMask = capacity - 1;
+		sampleSize = capacity * 10;
+	}
+
+	int frequency(int hashCode) {
+		int start = (hashCode & 3) << 2;
+		int frequency = MAXIMUM_FREQUENCY;
+		for (int i = 0; i < 4; i++) {
+			int count = (int) ((table[indexOf(hashCode, i)] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	void increment(int hashCode) {
+		int start = (hashCode & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hashCode, i), start + i);
+		}
+		if (added && ++additions == sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	private int indexOf(int hashCode, int depth) {
+		long h = (hashCode + SEEDS[depth]) * SEEDS[depth];
+		h += h >>> 32;
+		return (int) h & tableMask;
+	}
+
+	long retainedBytes() {
+		return Footprint.arrayBytes(table.length, 8);
+	}
+
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions >>>= 1;
+	}
+}
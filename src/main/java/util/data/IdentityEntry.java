@@ -0,0 +1,58 @@
+package util.data;
+
+import java.util.Map;
+import java.util.Objects;
+
+// 스레드 안전 맵의 반복자가 돌려주는 항목. 반복 시점의 키와 값을 가지며 setValue 는 map.put 으로 반영된다.
+// IdentityHashMap 과 같이 키는 동일성, 값은 equals 로 비교한다.
+final class IdentityEntry<K, V> implements Map.Entry<K, V> {
+	private final K key;
+	private V value;
+	private final Map<K, V> map;
+
+	IdentityEntry(K key, V value, Map<K, V> map) {
+		this.key = key;
+		this.value = value;
+		this.map = map;
+	}
+
+	@Override
+	public K getKey() {
+		return key;
+	}
+
+	@Override
+	public V getValue() {
+		return value;
+	}
+
+	@Override
+	public V setValue(V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		V old = this.value;
+		this.value = value;
+		map.put(key, value);
+		return old;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof Map.Entry) {
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) obj;
+			return key == e.getKey() && Objects.equals(value, e.getValue());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(key) ^ Objects.hashCode(value);
+	}
+
+	@Override
+	public String toString() {
+		return key + "=" + value;
+	}
+}
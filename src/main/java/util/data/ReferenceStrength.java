@@ -0,0 +1,9 @@
+package util.data;
+
+// 키나 값을 참조하는 강도.
+// WEAK 는 다른 곳에서 강하게 참조하지 않으면 다음 GC 에서, SOFT 는 힙이 부족할 때 수거된다.
+public enum ReferenceStrength {
+	STRONG,
+	WEAK,
+	SOFT
+}
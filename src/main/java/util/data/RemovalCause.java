@@ -0,0 +1,13 @@
+package util.data;
+
+// 항목이 맵에서 빠진 이유.
+// COLLECTED 는 키(또는 약한/소프트 값)가 GC 되어 정리된 경우, EXPLICIT 는 remove, clear, compute 의 null 결과 등으로 지운 경우,
+// REPLACED 는 put, replace, setValue 등으로 값이 다른 객체로 바뀐 경우, SIZE 는 WeakIdentityCache 가 최대 크기 때문에 제거한 경우,
+// EXPIRED 는 WeakIdentityCache 의 만료 기간이 지나 제거한 경우이다.
+public enum RemovalCause {
+	COLLECTED,
+	EXPLICIT,
+	REPLACED,
+	SIZE,
+	EXPIRED
+}
@@ -0,0 +1,8 @@
+package util.data;
+
+// 맵에서 빠진 값을 받아 네이티브 핸들 해제 등의 정리를 한다.
+// COLLECTED 이면 키는 이미 GC 되어 보통 null 이고, 값의 참조 강도가 STRONG 이 아니면 값도 null 일 수 있다.
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+	void onRemoval(K key, V value, RemovalCause cause);
+}
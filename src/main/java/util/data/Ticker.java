@@ -0,0 +1,11 @@
+package util.data;
+
+// 만료 시각 계산에 쓰는 나노초 단위 시계. 테스트에서는 직접 값을 돌려주는 구현으로 시간을 조절한다.
+@FunctionalInterface
+public interface Ticker {
+	long read();
+
+	static Ticker systemTicker() {
+		return System::nanoTime;
+	}
+}
@@ -0,0 +1,410 @@
+package util.data;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Class 를 키로 쓰는 약한 참조 맵. 값은 ClassValue 를 통해 클래스 자신에 붙여 두므로
+// 조회는 identityHashCode, 약한 참조, ReferenceQueue 없이 JVM 의 클래스별 저장소 한 번으로 끝난다.
+// 값은 클래스에서만 강하게 참조되므로 값이 자기 클래스나 클래스로더를 참조해도 클래스 언로드를 막지 않는다.
+// 반복을 위해 값이 있는 클래스를 ConcurrentWeakIdentitySet 에 따로 등록하며 반복자는 약한 일관성을 가진다.
+// null 키와 null 값은 허용하지 않는다.
+public class WeakClassMap<V> extends AbstractMap<Class<?>, V> implements ConcurrentMap<Class<?>, V> {
+	// Cell 은 맵이나 ClassValue 를 참조하지 않아야 한다. 그렇지 않으면 클래스가 맵을 붙잡아 언로드되지 않는다.
+	private final ClassValue<Cell> cells = new ClassValue<Cell>() {
+		@Override
+		protected Cell computeValue(Class<?> type) {
+			return new Cell();
+		}
+	};
+	// 값이 있는 클래스들. 값을 가지지 않으므로 값이 클래스를 참조해도 약한 참조가 풀린다.
+	private final ConcurrentWeakIdentitySet<Class<?>> classes = new ConcurrentWeakIdentitySet<>();
+	private Set<Map.Entry<Class<?>, V>> entrySet;
+	private Set<Class<?>> keySet;
+	private Collection<V> values;
+
+	// 조회한 적 있는 클래스마다 빈 Cell 이 하나씩 붙는다. 클래스 수만큼으로 제한되며 클래스와 함께 사라진다.
+	static final class Cell {
+		volatile Object value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V valueOf(Class<?> type) {
+		return (V) cells.get(type).value;
+	}
+
+	@Override
+	public int size() {
+		return classes.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return classes.isEmpty();
+	}
+
+	@Override
+	public V get(Object key) {
+		if (!(key instanceof Class)) {
+			return null;
+		}
+		return valueOf((Class<?>) key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public V put(Class<?> key, V value) {
+		Objects.requireNonNull(value);
+		Cell cell = cells.get(key);
+		synchronized (cell) {
+			@SuppressWarnings("unchecked")
+			V old = (V) cell.value;
+			cell.value = value;
+			if (old == null) {
+				classes.add(key);
+			}
+			return old;
+		}
+	}
+
+	@Override
+	public V putIfAbsent(Class<?> key, V value) {
+		Objects.requireNonNull(value);
+		Cell cell = cells.get(key);
+		synchronized (cell) {
+			@SuppressWarnings("unchecked")
+			V old = (V) cell.value;
+			if (old == null) {
+				cell.value = value;
+				classes.add(key);
+			}
+			return old;
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (!(key instanceof Class)) {
+			return null;
+		}
+		Class<?> type = (Class<?>) key;
+		Cell cell = cells.get(type);
+		synchronized (cell) {
+			@SuppressWarnings("unchecked")
+			V old = (V) cell.value;
+			if (old != null) {
+				cell.value = null;
+				classes.remove(type);
+			}
+			return old;
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (!(key instanceof Class) || value == null) {
+			return false;
+		}
+		Class<?> type = (Class<?>) key;
+		Cell cell = cells.get(type);
+		synchronized (cell) {
+			if (!value.equals(cell.value)) {
+				return false;
+			}
+			cell.value = null;
+			classes.remove(type);
+			return true;
+		}
+	}
+
+	@Override
+	public boolean replace(Class<?> key, V oldValue, V newValue) {
+		Objects.requireNonNull(oldValue);
+		Objects.requireNonNull(newValue);
+		Cell cell = cells.get(key);
+		synchronized (cell) {
+			if (!oldValue.equals(cell.value)) {
+				return false;
+			}
+			cell.value = newValue;
+			return true;
+		}
+	}
+
+	@Override
+	public V replace(Class<?> key, V value) {
+		Objects.requireNonNull(value);
+		Cell cell = cells.get(key);
+		synchronized (cell) {
+			@SuppressWarnings("unchecked")
+			V old = (V) cell.value;
+			if (old != null) {
+				cell.value = value;
+			}
+			return old;
+		}
+	}
+
+	// 값이 있으면 잠금 없이 돌려주고, 없으면 클래스의 Cell 을 잠그고 한 번만 계산한다.
+	@Override
+	public V computeIfAbsent(Class<?> key, Function<? super Class<?>, ? extends V> mappingFunction) {
+		Objects.requireNonNull(mappingFunction);
+		Cell cell = cells.get(key);
+		@SuppressWarnings("unchecked")
+		V value = (V) cell.value;
+		if (value != null) {
+			return value;
+		}
+		synchronized (cell) {
+			@SuppressWarnings("unchecked")
+			V old = (V) cell.value;
+			if (old != null) {
+				return old;
+			}
+			value = mappingFunction.apply(key);
+			if (value != null) {
+				cell.value = value;
+				classes.add(key);
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public V computeIfPresent(Class<?> key, BiFunction<? super Class<?>, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
+		Cell cell = cells.get(key);
+		if (cell.value == null) {
+			return null;
+		}
+		synchronized (cell) {
+			@SuppressWarnings("unchecked")
+			V old = (V) cell.value;
+			if (old == null) {
+				return null;
+			}
+			V value = remappingFunction.apply(key, old);
+			cell.value = value;
+			if (value == null) {
+				classes.remove(key);
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public V compute(Class<?> key, BiFunction<? super Class<?>, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
+		Cell cell = cells.get(key);
+		synchronized (cell) {
+			@SuppressWarnings("unchecked")
+			V old = (V) cell.value;
+			V value = remappingFunction.apply(key, old);
+			cell.value = value;
+			if (old == null && value != null) {
+				classes.add(key);
+			} else if (old != null && value == null) {
+				classes.remove(key);
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public V merge(Class<?> key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(value);
+		Objects.requireNonNull(remappingFunction);
+		Cell cell = cells.get(key);
+		synchronized (cell) {
+			@SuppressWarnings("unchecked")
+			V old = (V) cell.value;
+			V newValue = old == null ? value : remappingFunction.apply(old, value);
+			cell.value = newValue;
+			if (old == null) {
+				classes.add(key);
+			} else if (newValue == null) {
+				classes.remove(key);
+			}
+			return newValue;
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (Class<?> type : classes) {
+			remove(type);
+		}
+	}
+
+	// 언로드된 클래스 중 등록에서 정리되지 않은 것을 모두 정리하고 정리한 수를 돌려준다.
+	public int drainCleared() {
+		return classes.drainCleared();
+	}
+
+	@Override
+	public Set<Map.Entry<Class<?>, V>> entrySet() {
+		Set<Map.Entry<Class<?>, V>> es = entrySet;
+		return es != null ? es : (entrySet = new EntrySet());
+	}
+
+	@Override
+	public Set<Class<?>> keySet() {
+		Set<Class<?>> ks = keySet;
+		return ks != null ? ks : (keySet = new KeySet());
+	}
+
+	@Override
+	public Collection<V> values() {
+		Collection<V> vs = values;
+		return vs != null ? vs : (values = new Values());
+	}
+
+	// 등록된 클래스를 순회하며 값이 있는 것만 돌려준다. 다음 원소를 미리 찾아 강하게 참조한다.
+	abstract class BaseIterator<T> implements Iterator<T> {
+		private final Iterator<Class<?>> it = classes.iterator();
+		private Class<?> nextKey;
+		private V nextValue;
+		private Class<?> lastKey;
+
+		@Override
+		public boolean hasNext() {
+			while (nextValue == null) {
+				if (!it.hasNext()) {
+					return false;
+				}
+				Class<?> key = it.next();
+				nextValue = valueOf(key);
+				nextKey = key;
+			}
+			return true;
+		}
+
+		Map.Entry<Class<?>, V> nextEntry() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<Class<?>, V> e = new IdentityEntry<>(nextKey, nextValue, WeakClassMap.this);
+			lastKey = nextKey;
+			nextKey = null;
+			nextValue = null;
+			return e;
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			WeakClassMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+
+	final class KeySet extends AbstractSet<Class<?>> {
+		@Override
+		public Iterator<Class<?>> iterator() {
+			return new BaseIterator<Class<?>>() {
+				@Override
+				public Class<?> next() {
+					return nextEntry().getKey();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return WeakClassMap.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return WeakClassMap.this.remove(o) != null;
+		}
+
+		@Override
+		public void clear() {
+			WeakClassMap.this.clear();
+		}
+	}
+
+	final class Values extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new BaseIterator<V>() {
+				@Override
+				public V next() {
+					return nextEntry().getValue();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return WeakClassMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			WeakClassMap.this.clear();
+		}
+	}
+
+	final class EntrySet extends AbstractSet<Map.Entry<Class<?>, V>> {
+		@Override
+		public Iterator<Map.Entry<Class<?>, V>> iterator() {
+			return new BaseIterator<Map.Entry<Class<?>, V>>() {
+				@Override
+				public Map.Entry<Class<?>, V> next() {
+					return nextEntry();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return WeakClassMap.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			V value = get(e.getKey());
+			return value != null && value.equals(e.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return WeakClassMap.this.remove(e.getKey(), e.getValue());
+		}
+
+		@Override
+		public void clear() {
+			WeakClassMap.this.clear();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package util.data;
+
+import java.nio.ByteBuffer;
+import java.util.ConcurrentModificationException;
+import java.util.function.BiConsumer;
+
+// 값이 바이트 열인 WeakIdentityMap. 값은 맵이 관리하는 직접(direct) ByteBuffer 슬랩에 복사해 두므로
+// 큰 페이로드가 힙을 차지하지 않고 GC 가 훑을 대상도 늘지 않는다. 힙에는 항목당 핸들과 길이 int 두 개만 남는다.
+// 키가 GC 되어 정리되거나 지우거나 덮어쓰면 블록을 바로 재사용하며, 슬랩의 네이티브 메모리는 맵이 GC 될 때 돌려준다.
+// 한 값의 길이는 슬랩 크기를 넘을 수 없다.
+public class WeakIdentityBufferMap<K> extends WeakIdentityTable<K> {
+	// refs 와 같은 인덱스에 arena 의 블록 핸들과 값의 길이를 저장한다.
+	private int[] handles;
+	private int[] lengths;
+	private final BufferArena arena;
+
+	public WeakIdentityBufferMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public WeakIdentityBufferMap(int expectedSize) {
+		this(expectedSize, BufferArena.DEFAULT_SLAB_SIZE);
+	}
+
+	// slabSize 는 2의 거듭제곱이며 가장 긴 값보다 커야 한다.
+	public WeakIdentityBufferMap(int expectedSize, int slabSize) {
+		this(expectedSize, ExpungePolicy.eager(), ReferenceStrength.WEAK, slabSize);
+	}
+
+	// keyStrength 는 WEAK 또는 SOFT 이다.
+	public WeakIdentityBufferMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, int slabSize) {
+		this(expectedSize, expungePolicy, keyStrength, new BufferArena(slabSize));
+	}
+
+	WeakIdentityBufferMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, BufferArena arena) {
+		super(expectedSize, expungePolicy, keyStrength);
+		this.arena = arena;
+	}
+
+	@Override
+	Object allocateValues(int capacity) {
+		int[][] old = { handles, lengths };
+		handles = new int[capacity];
+		lengths = new int[capacity];
+		return old;
+	}
+
+	@Override
+	void moveValue(Object oldValues, int from, int to) {
+		int[][] old = (int[][]) oldValues;
+		handles[to] = old[0][from];
+		lengths[to] = old[1][from];
+	}
+
+	// 지우거나 GC 된 키를 정리할 때 블록을 돌려준다.
+	@Override
+	void clearValue(int index) {
+		arena.free(handles[index], lengths[index]);
+	}
+
+	@Override
+	void clearValues() {
+		arena.reset();
+	}
+
+	@Override
+	void valuesFootprint(Footprint footprint) {
+		footprint.add("blockHandles", Footprint.arrayBytes(handles.length, 4) * 2);
+		footprint.add("arena", arena.retainedBytes());
+		footprint.addOffHeap("slabs", arena.capacityBytes());
+	}
+
+	public int getSlabSize() {
+		return arena.getSlabSize();
+	}
+
+	// 힙 밖에 할당한 슬랩의 바이트 수
+	public long offHeapCapacity() {
+		return arena.capacityBytes();
+	}
+
+	// 값이 차지하는 블록의 바이트 수, 블록은 2의 거듭제곱 크기이므로 값 길이의 합보다 크다.
+	public long offHeapUsed() {
+		return arena.usedBytes();
+	}
+
+	// 값을 복사하지 않고 가리키는 읽기 전용 버퍼를 돌려준다. 키가 없으면 null 이다.
+	// 이 키를 지우거나 덮어쓰거나 clear 한 뒤에는 블록이 재사용되므로 버퍼를 더 읽으면 안 된다.
+	public ByteBuffer get(Object key) {
+		expungeOnRead();
+		int index = indexOf(key);
+		return index < 0 ? null : arena.view(handles[index], lengths[index]);
+	}
+
+	// 값을 새 배열에 복사해 돌려준다. 키가 없으면 null 이다.
+	public byte[] getBytes(Object key) {
+		expungeOnRead();
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		byte[] b = new byte[lengths[index]];
+		arena.read(handles[index], b, 0, b.length);
+		return b;
+	}
+
+	// 값의 길이, 키가 없으면 -1 이다.
+	public int length(Object key) {
+		expungeOnRead();
+		int index = indexOf(key);
+		return index < 0 ? -1 : lengths[index];
+	}
+
+	public void put(K key, byte[] value) {
+		put(key, value, 0, value.length);
+	}
+
+	public void put(K key, byte[] value, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > value.length - length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", array length " + value.length);
+		}
+		int index = reserve(key, length);
+		arena.write(handles[index], value, offset, length);
+	}
+
+	// value 의 position 부터 limit 까지를 복사한다. value 의 position 은 바꾸지 않는다.
+	public void put(K key, ByteBuffer value) {
+		int index = reserve(key, value.remaining());
+		arena.write(handles[index], value);
+	}
+
+	// 키의 슬롯에 length 바이트의 블록을 마련한다. 이전 값의 블록이 같은 크기 등급이면 그대로 쓴다.
+	// 할당이 실패하면 맵은 바뀌지 않는다.
+	private int reserve(K key, int length) {
+		expunge();
+		int hashCode = hashOf(key);
+		int index = probe(key, hashCode);
+		if (index < 0) {
+			int handle = arena.allocate(length);
+			index = insertAt(-index - 1, key, hashCode);
+			handles[index] = handle;
+		} else if (!BufferArena.fits(lengths[index], length)) {
+			int handle = arena.allocate(length);
+			arena.free(handles[index], lengths[index]);
+			handles[index] = handle;
+		}
+		lengths[index] = length;
+		return index;
+	}
+
+	// 키가 있었으면 true 를 돌려준다.
+	public boolean remove(Object key) {
+		expunge();
+		int index = indexOf(key);
+		if (index < 0) {
+			return false;
+		}
+		removeAt(index);
+		shrinkIfSparse();
+		return true;
+	}
+
+	// 각 값의 읽기 전용 버퍼를 넘긴다. 버퍼는 action 안에서만 유효하다.
+	public void forEach(BiConsumer<? super K, ? super ByteBuffer> action) {
+		if (action == null) {
+			throw new NullPointerException();
+		}
+		int mc = modCount;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			K key = keyAt(tab, i);
+			if (key != null) {
+				action.accept(key, arena.view(handles[i], lengths[i]));
+				if (modCount != mc) {
+					throw new ConcurrentModificationException();
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			K key = keyAt(tab, i);
+			if (key != null) {
+				if (sb.length() > 1) {
+					sb.append(", ");
+				}
+				sb.append(key).append('=').append(lengths[i]).append(" bytes");
+			}
+		}
+		return sb.append('}').toString();
+	}
+}
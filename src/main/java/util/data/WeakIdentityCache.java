@@ -0,0 +1,539 @@
+package util.data;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntBiFunction;
+
+// 최대 크기(또는 가중치 합)를 넘으면 EvictionPolicy 에 따라 항목을 제거하는 WeakIdentityMap.
+// 키는 약한 참조로 유지되어 GC 된 키의 항목은 그대로 정리된다.
+// 접근 순서는 refs 와 같은 인덱스의 int 배열로 만든 이중 연결 리스트로 관리하므로 제거 대상을 찾을 때 테이블을 훑지 않는다.
+// TINY_LFU 는 window, probation, protected 세 리스트를 쓰고 LRU 는 probation 하나만 쓴다.
+// 쓰기 또는 접근 후 만료 기간을 정하면 키가 살아 있어도 기간이 지난 항목을 연산을 시작할 때 제거한다.
+// 기간이 모든 항목에 같으므로 쓴 순서와 접근 순서의 리스트 머리만 보면 되고 테이블을 훑지 않는다.
+// 최대 크기 없이 만료만 쓰려면 maximumSize 를 Long.MAX_VALUE 로 둔다. 이때는 내보낼 일이 없으므로 정책과 관계없이
+// 빈도 스케치를 만들지 않고 window, protected 리스트도 쓰지 않는다.
+public class WeakIdentityCache<K, V> extends WeakIdentityMap<K, V> {
+	private static final int NIL = -1;
+	private static final byte WINDOW = 0;
+	private static final byte PROBATION = 1;
+	private static final byte PROTECTED = 2;
+
+	private static final ToIntBiFunction<Object, Object> SINGLETON_WEIGHER = (k, v) -> 1;
+
+	private final long maximumWeight;
+	private final ToIntBiFunction<? super K, ? super V> weigher;
+	private final EvictionPolicy evictionPolicy;
+	// 최대 크기가 있고 정책이 TINY_LFU 일 때만 true 이다.
+	private final boolean tinyLfu;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	private final FrequencySketch sketch;
+
+	// 상위 생성자에서 allocateValues 가 호출되므로 필드 초기화를 하지 않는다.
+	private int[] prev;
+	private int[] next;
+	private int[] weights;
+	private byte[] queues;
+	// 재해시 중에만 쓰인다. 이전 슬롯의 새 위치와 이전 리스트
+	private int[] remap;
+	private int[] oldNext;
+	private int[] oldWeights;
+	// 만료를 설정하기 전에는 null 이다.
+	private ExpiryList writeOrder;
+	private ExpiryList accessOrder;
+
+	private final int[] heads = { NIL, NIL, NIL };
+	private final int[] tails = { NIL, NIL, NIL };
+	private final long[] queueWeights = new long[3];
+	private long totalWeight;
+	private Ticker ticker = Ticker.systemTicker();
+	// 연산을 시작할 때 읽은 시각, 그 연산에서 읽거나 쓴 항목의 시각으로 쓴다.
+	private long now;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	public WeakIdentityCache(long maximumSize) {
+		this(maximumSize, EvictionPolicy.TINY_LFU);
+	}
+
+	public WeakIdentityCache(long maximumSize, EvictionPolicy evictionPolicy) {
+		this(maximumSize, SINGLETON_WEIGHER, evictionPolicy);
+	}
+
+	// weigher 가 돌려준 항목별 가중치의 합이 maximumWeight 를 넘지 않도록 한다.
+	public WeakIdentityCache(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher, EvictionPolicy evictionPolicy) {
+		this(DEFAULT_CAPACITY, ExpungePolicy.eager(), ReferenceStrength.WEAK, ReferenceStrength.STRONG, maximumWeight, weigher, evictionPolicy);
+	}
+
+	public WeakIdentityCache(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, ReferenceStrength valueStrength,
+			long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher, EvictionPolicy evictionPolicy) {
+		super(expectedSize, expungePolicy, keyStrength, valueStrength);
+		if (maximumWeight < 0) {
+			throw new IllegalArgumentException("Illegal maximum weight: " + maximumWeight);
+		}
+		this.maximumWeight = maximumWeight;
+		this.weigher = Objects.requireNonNull(weigher);
+		this.evictionPolicy = Objects.requireNonNull(evictionPolicy);
+		tinyLfu = evictionPolicy == EvictionPolicy.TINY_LFU && maximumWeight != Long.MAX_VALUE;
+		if (tinyLfu) {
+			// 창은 전체의 1%, 나머지의 80% 를 protected 로 둔다.
+			windowMaximum = Math.max(1, maximumWeight / 100);
+			protectedMaximum = (long) ((maximumWeight - windowMaximum) * 0.8);
+			sketch = new FrequencySketch();
+		} else {
+			windowMaximum = 0;
+			protectedMaximum = 0;
+			sketch = null;
+		}
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	// 최대 크기를 넘게 넣으면 바로 내보내므로 그 이상 늘리지 않는다. 가중치가 있으면 항목 수를 알 수 없어 미리 늘리지 않는다.
+	@Override
+	int presizeLimit() {
+		return weigher == SINGLETON_WEIGHER ? (int) Math.min(maximumWeight, Integer.MAX_VALUE) : 0;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	// 마지막으로 쓴 뒤 duration 이 지난 항목을 제거한다. 이미 있는 항목은 지금 쓴 것으로 본다.
+	public void setExpireAfterWrite(long duration, TimeUnit unit) {
+		writeOrder = setExpiry(writeOrder, duration, unit);
+	}
+
+	// 마지막으로 읽거나 쓴 뒤 duration 이 지난 항목을 제거한다. 이미 있는 항목은 지금 접근한 것으로 본다.
+	public void setExpireAfterAccess(long duration, TimeUnit unit) {
+		accessOrder = setExpiry(accessOrder, duration, unit);
+	}
+
+	// 설정하지 않았으면 -1 이다.
+	public long getExpireAfterWrite(TimeUnit unit) {
+		return writeOrder == null ? -1 : unit.convert(writeOrder.duration, TimeUnit.NANOSECONDS);
+	}
+
+	public long getExpireAfterAccess(TimeUnit unit) {
+		return accessOrder == null ? -1 : unit.convert(accessOrder.duration, TimeUnit.NANOSECONDS);
+	}
+
+	// 이미 기록된 시각은 바꾸지 않으므로 항목을 넣기 전에 설정한다.
+	public void setTicker(Ticker ticker) {
+		this.ticker = Objects.requireNonNull(ticker);
+	}
+
+	public Ticker getTicker() {
+		return ticker;
+	}
+
+	private ExpiryList setExpiry(ExpiryList list, long duration, TimeUnit unit) {
+		if (duration < 0) {
+			throw new IllegalArgumentException("Illegal duration: " + duration);
+		}
+		long nanos = unit.toNanos(duration);
+		if (list != null) {
+			list.duration = nanos;
+		} else {
+			list = new ExpiryList(nanos, refs.length);
+			long time = ticker.read();
+			Object[] tab = refs;
+			for (int i = 0; i < tab.length; i++) {
+				if (tab[i] != null && tab[i] != TOMBSTONE) {
+					list.linkLast(i, time);
+				}
+			}
+		}
+		return list;
+	}
+
+	// 현재 항목들의 가중치 합
+	public long weightedSize() {
+		expungeOnRead();
+		return totalWeight;
+	}
+
+	public CacheStats stats() {
+		return new CacheStats(hitCount, missCount, evictionCount);
+	}
+
+	@Override
+	void afterRead(int index) {
+		hitCount++;
+		if (accessOrder != null) {
+			accessOrder.moveToTail(index, now);
+		}
+		onAccess(index);
+	}
+
+	@Override
+	void afterMiss(Object key) {
+		missCount++;
+		// 없는 키의 요청도 빈도에 반영해야 다시 들어올 때 진입 여부를 판단할 수 있다.
+		if (sketch != null && key != null) {
+			sketch.increment(hashCodeMapper.applyAsInt(key));
+		}
+	}
+
+	@Override
+	void afterWrite(int index, boolean inserted) {
+		if (writeOrder != null) {
+			writeOrder.touch(index, inserted, now);
+		}
+		if (accessOrder != null) {
+			accessOrder.touch(index, inserted, now);
+		}
+		if (inserted) {
+			weights[index] = 0;
+			linkLast(index, tinyLfu ? WINDOW : PROBATION);
+			if (sketch != null) {
+				// 가중치가 아니라 항목 수에 맞춰 키운다.
+				sketch.ensureCapacity(size);
+				sketch.increment(refs[index].hashCode());
+			}
+		} else {
+			onAccess(index);
+		}
+		int weight = weigher.applyAsInt(keyAt(refs, index), valueAt(index));
+		if (weight < 0) {
+			removeAt(index);
+			throw new IllegalArgumentException("Illegal weight: " + weight);
+		}
+		queueWeights[queues[index]] += weight - weights[index];
+		totalWeight += weight - weights[index];
+		weights[index] = weight;
+		evict();
+	}
+
+	// 연산을 시작할 때 정리에 이어 만료된 항목을 제거한다. 제거 알림은 상위 클래스가 이어서 전달한다.
+	@Override
+	void afterExpunge() {
+		if (writeOrder != null || accessOrder != null) {
+			now = ticker.read();
+			if (expire(writeOrder) + expire(accessOrder) > 0) {
+				shrinkIfSparse();
+			}
+		}
+		super.afterExpunge();
+	}
+
+	private int expire(ExpiryList list) {
+		if (list == null) {
+			return 0;
+		}
+		int removed = 0;
+		for (int index = list.head; index != NIL && list.isExpired(index, now); index = list.head) {
+			removeAt(index, RemovalCause.EXPIRED);
+			removed++;
+		}
+		return removed;
+	}
+
+	private void onAccess(int index) {
+		if (sketch != null) {
+			sketch.increment(refs[index].hashCode());
+		}
+		byte queue = queues[index];
+		if (queue == PROBATION && tinyLfu) {
+			// 다시 접근된 항목은 protected 로 올리고 넘친 만큼 protected 의 오래된 항목을 내린다.
+			moveToTail(index, PROTECTED);
+			while (queueWeights[PROTECTED] > protectedMaximum && heads[PROTECTED] != index) {
+				moveToTail(heads[PROTECTED], PROBATION);
+			}
+		} else {
+			moveToTail(index, queue);
+		}
+	}
+
+	private void evict() {
+		// 창에서 넘친 항목은 probation 끝으로 옮겨 진입 후보가 된다.
+		int candidate = NIL;
+		if (tinyLfu) {
+			while (queueWeights[WINDOW] > windowMaximum) {
+				int index = heads[WINDOW];
+				moveToTail(index, PROBATION);
+				if (candidate == NIL) {
+					candidate = index;
+				}
+			}
+		}
+		while (totalWeight > maximumWeight) {
+			int victim = heads[PROBATION];
+			if (victim == NIL) {
+				victim = heads[PROTECTED];
+			}
+			if (victim == NIL) {
+				victim = heads[WINDOW];
+			}
+			// 후보의 빈도가 probation 의 가장 오래된 항목보다 높을 때만 후보를 남긴다.
+			if (candidate != NIL && victim != candidate) {
+				if (frequencyAt(candidate) > frequencyAt(victim)) {
+					evictAt(victim);
+					continue;
+				}
+				victim = candidate;
+			}
+			if (victim == candidate) {
+				// 후보들은 probation 끝에 연속해 있다.
+				candidate = next[candidate];
+			}
+			evictAt(victim);
+		}
+	}
+
+	private int frequencyAt(int index) {
+		return sketch.frequency(refs[index].hashCode());
+	}
+
+	private void evictAt(int index) {
+		removeAt(index, RemovalCause.SIZE);
+		evictionCount++;
+	}
+
+	private void linkLast(int index, byte queue) {
+		int tail = tails[queue];
+		queues[index] = queue;
+		prev[index] = tail;
+		next[index] = NIL;
+		if (tail == NIL) {
+			heads[queue] = index;
+		} else {
+			next[tail] = index;
+		}
+		tails[queue] = index;
+		queueWeights[queue] += weights[index];
+	}
+
+	private void unlink(int index) {
+		byte queue = queues[index];
+		int p = prev[index];
+		int n = next[index];
+		if (p == NIL) {
+			heads[queue] = n;
+		} else {
+			next[p] = n;
+		}
+		if (n == NIL) {
+			tails[queue] = p;
+		} else {
+			prev[n] = p;
+		}
+		queueWeights[queue] -= weights[index];
+	}
+
+	private void moveToTail(int index, byte queue) {
+		if (tails[queue] != index) {
+			unlink(index);
+			linkLast(index, queue);
+		}
+	}
+
+	@Override
+	Object allocateValues(int capacity) {
+		Object oldValues = super.allocateValues(capacity);
+		if (next != null) {
+			remap = new int[next.length];
+			oldNext = next;
+			oldWeights = weights;
+		}
+		prev = new int[capacity];
+		next = new int[capacity];
+		weights = new int[capacity];
+		queues = new byte[capacity];
+		if (writeOrder != null) {
+			writeOrder.allocate(capacity);
+		}
+		if (accessOrder != null) {
+			accessOrder.allocate(capacity);
+		}
+		return oldValues;
+	}
+
+	@Override
+	void moveValue(Object oldValues, int from, int to) {
+		super.moveValue(oldValues, from, to);
+		remap[from] = to;
+		weights[to] = oldWeights[from];
+		if (writeOrder != null) {
+			writeOrder.move(from, to);
+		}
+		if (accessOrder != null) {
+			accessOrder.move(from, to);
+		}
+	}
+
+	// 이전 리스트를 순서대로 따라가며 새 인덱스로 다시 연결한다.
+	@Override
+	void afterRehash() {
+		for (byte queue = WINDOW; queue <= PROTECTED; queue++) {
+			int index = heads[queue];
+			heads[queue] = NIL;
+			tails[queue] = NIL;
+			queueWeights[queue] = 0;
+			for (; index != NIL; index = oldNext[index]) {
+				linkLast(remap[index], queue);
+			}
+		}
+		if (writeOrder != null) {
+			writeOrder.relink(remap);
+		}
+		if (accessOrder != null) {
+			accessOrder.relink(remap);
+		}
+		remap = null;
+		oldNext = null;
+		oldWeights = null;
+	}
+
+	@Override
+	void clearValue(int index) {
+		unlink(index);
+		if (writeOrder != null) {
+			writeOrder.unlink(index);
+		}
+		if (accessOrder != null) {
+			accessOrder.unlink(index);
+		}
+		totalWeight -= weights[index];
+		weights[index] = 0;
+		super.clearValue(index);
+	}
+
+	@Override
+	void valuesFootprint(Footprint footprint) {
+		super.valuesFootprint(footprint);
+		footprint.add("evictionQueues", Footprint.arrayBytes(next.length, 4) * 3 + Footprint.arrayBytes(next.length, 1));
+		if (sketch != null) {
+			footprint.add("frequencySketch", sketch.retainedBytes());
+		}
+		if (writeOrder != null) {
+			footprint.add("writeOrder", writeOrder.retainedBytes());
+		}
+		if (accessOrder != null) {
+			footprint.add("accessOrder", accessOrder.retainedBytes());
+		}
+	}
+
+	@Override
+	void clearValues() {
+		super.clearValues();
+		Arrays.fill(heads, NIL);
+		Arrays.fill(tails, NIL);
+		Arrays.fill(queueWeights, 0);
+		totalWeight = 0;
+		if (writeOrder != null) {
+			writeOrder.clear();
+		}
+		if (accessOrder != null) {
+			accessOrder.clear();
+		}
+	}
+
+	// 시각을 기록한 순서의 이중 연결 리스트. 기간이 같으므로 머리가 가장 먼저 만료된다.
+	// 접근 순서 리스트와 같이 refs 와 같은 인덱스의 배열로 만들고 재해시 때 다시 연결한다.
+	static final class ExpiryList {
+		long duration;
+		private long[] times;
+		private int[] prev;
+		private int[] next;
+		int head = NIL;
+		private int tail = NIL;
+		// 재해시 중에만 쓰인다.
+		private long[] oldTimes;
+		private int[] oldNext;
+
+		ExpiryList(long duration, int capacity) {
+			this.duration = duration;
+			allocate(capacity);
+		}
+
+		void allocate(int capacity) {
+			oldTimes = times;
+			oldNext = next;
+			times = new long[capacity];
+			prev = new int[capacity];
+			next = new int[capacity];
+		}
+
+		void move(int from, int to) {
+			times[to] = oldTimes[from];
+		}
+
+		void relink(int[] remap) {
+			int index = head;
+			head = NIL;
+			tail = NIL;
+			for (; index != NIL; index = oldNext[index]) {
+				link(remap[index]);
+			}
+			oldTimes = null;
+			oldNext = null;
+		}
+
+		// ticker 값이 넘쳐 음수가 되어도 맞도록 차이로 비교한다.
+		boolean isExpired(int index, long now) {
+			return now - times[index] >= duration;
+		}
+
+		void touch(int index, boolean inserted, long time) {
+			if (inserted) {
+				linkLast(index, time);
+			} else {
+				times[index] = time;
+				if (tail != index) {
+					unlink(index);
+					link(index);
+				}
+			}
+		}
+
+		void moveToTail(int index, long time) {
+			touch(index, false, time);
+		}
+
+		void linkLast(int index, long time) {
+			times[index] = time;
+			link(index);
+		}
+
+		private void link(int index) {
+			prev[index] = tail;
+			next[index] = NIL;
+			if (tail == NIL) {
+				head = index;
+			} else {
+				next[tail] = index;
+			}
+			tail = index;
+		}
+
+		void unlink(int index) {
+			int p = prev[index];
+			int n = next[index];
+			if (p == NIL) {
+				head = n;
+			} else {
+				next[p] = n;
+			}
+			if (n == NIL) {
+				tail = p;
+			} else {
+				prev[n] = p;
+			}
+		}
+
+		void clear() {
+			head = NIL;
+			tail = NIL;
+		}
+
+		long retainedBytes() {
+			return Footprint.arrayBytes(times.length, 8) + Footprint.arrayBytes(next.length, 4) * 2;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package util.data;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+
+// 값이 int 인 WeakIdentityMap.
+// 값을 int 배열에 저장하므로 카운터나 ID 로 쓸 때 값의 박싱과 증가 시 할당이 없다.
+public class WeakIdentityIntMap<K> extends WeakIdentityPrimitiveMap<K> {
+	// refs 와 같은 인덱스에 값을 저장한다.
+	private int[] vals;
+
+	public WeakIdentityIntMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public WeakIdentityIntMap(int expectedSize) {
+		this(expectedSize, ExpungePolicy.eager());
+	}
+
+	// WeakIdentityMap(ToIntFunction) 과 같이 키가 가진 id 를 해시로 쓴다. 키는 여전히 == 으로 비교한다.
+	public WeakIdentityIntMap(ToIntFunction<? super K> hashFunction) {
+		this(DEFAULT_CAPACITY, ExpungePolicy.eager(), ReferenceStrength.WEAK, hashFunction);
+	}
+
+	public WeakIdentityIntMap(ExpungePolicy expungePolicy) {
+		this(DEFAULT_CAPACITY, expungePolicy);
+	}
+
+	public WeakIdentityIntMap(int expectedSize, ExpungePolicy expungePolicy) {
+		this(expectedSize, expungePolicy, ReferenceStrength.WEAK);
+	}
+
+	// keyStrength 는 WEAK 또는 SOFT 이다.
+	public WeakIdentityIntMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength) {
+		this(expectedSize, expungePolicy, keyStrength, IDENTITY_HASH);
+	}
+
+	public WeakIdentityIntMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, ToIntFunction<? super K> hashFunction) {
+		super(expectedSize, expungePolicy, keyStrength, hashFunction);
+	}
+
+	@Override
+	Object allocateValues(int capacity) {
+		int[] old = vals;
+		vals = new int[capacity];
+		return old;
+	}
+
+	@Override
+	void moveValue(Object oldValues, int from, int to) {
+		vals[to] = ((int[]) oldValues)[from];
+	}
+
+	@Override
+	void clearValue(int index) {
+		vals[index] = 0;
+	}
+
+	@Override
+	void clearValues() {
+		Arrays.fill(vals, 0);
+	}
+
+	@Override
+	void valuesFootprint(Footprint footprint) {
+		footprint.add("values", Footprint.arrayBytes(vals.length, 4));
+	}
+
+	@Override
+	void appendValue(StringBuilder sb, int index) {
+		sb.append(vals[index]);
+	}
+
+	// 키가 없으면 0 을 돌려준다.
+	public int getInt(Object key) {
+		return getOrDefault(key, 0);
+	}
+
+	public int getOrDefault(Object key, int defaultValue) {
+		int index = slotForRead(key);
+		return index < 0 ? defaultValue : vals[index];
+	}
+
+	// 이전 값을 돌려준다. 키가 없었으면 0 을 돌려준다.
+	public int putInt(K key, int value) {
+		int index = slotForWrite(key);
+		if (index < 0) {
+			vals[-index - 1] = value;
+			return 0;
+		}
+		int old = vals[index];
+		vals[index] = value;
+		return old;
+	}
+
+	// 키가 없으면 0 에 더한다.
+	public int addAndGet(K key, int delta) {
+		int index = slotForWrite(key);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return vals[index] += delta;
+	}
+
+	// 제거된 값을 돌려준다. 키가 없었으면 0 을 돌려준다.
+	public int removeInt(Object key) {
+		int index = slotForRemove(key);
+		if (index < 0) {
+			return 0;
+		}
+		int old = vals[index];
+		removeSlot(index);
+		return old;
+	}
+
+	public void forEach(ObjIntConsumer<? super K> action) {
+		Objects.requireNonNull(action);
+		forEachSlot((k, i) -> action.accept(k, vals[i]));
+	}
+}
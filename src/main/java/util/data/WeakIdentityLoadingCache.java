@@ -0,0 +1,162 @@
+package util.data;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// 키 객체마다 한 번 계산한 값을 키가 살아 있는 동안 보관하는 스레드 안전 캐시.
+// ConcurrentWeakIdentityMap 에 로드 중이거나 로드가 끝난 CompletableFuture 를 저장하므로
+// 같은 키의 로드는 동시에 하나만 실행되고 나머지 호출은 그 로드를 기다린다.
+// 로드가 실패하거나 null 을 돌려주면 저장하지 않고 다음 호출에서 다시 로드한다.
+// 값이 키를 강하게 참조하면 키가 GC 되지 않는다.
+public class WeakIdentityLoadingCache<K, V> {
+	private final ConcurrentWeakIdentityMap<K, LoadingFuture<V>> map;
+	private final Function<? super K, ? extends V> loader;
+	// null 이면 호출한 스레드에서 로드한다.
+	private final Executor executor;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder loadSuccessCount = new LongAdder();
+	private final LongAdder loadFailureCount = new LongAdder();
+	private final LongAdder totalLoadTime = new LongAdder();
+
+	public WeakIdentityLoadingCache(Function<? super K, ? extends V> loader) {
+		this(loader, null);
+	}
+
+	// getAsync 의 로드를 executor 에서 실행한다. get 은 그 로드가 끝날 때까지 기다린다.
+	public WeakIdentityLoadingCache(Function<? super K, ? extends V> loader, Executor executor) {
+		this.map = new ConcurrentWeakIdentityMap<>();
+		this.loader = Objects.requireNonNull(loader);
+		this.executor = executor;
+	}
+
+	// 값을 돌려주고, 없으면 로드한다. 다른 스레드가 로드 중이면 끝날 때까지 기다린다.
+	// 로더가 던진 RuntimeException 과 Error 는 그대로, 그 밖의 예외는 CompletionException 으로 던진다.
+	public V get(K key) {
+		return join(getFuture(Objects.requireNonNull(key), false));
+	}
+
+	// 값이 준비되면 완료되는 future 를 돌려준다. executor 가 있으면 그 스레드에서 로드한다.
+	public CompletableFuture<V> getAsync(K key) {
+		// 받은 쪽에서 complete 해도 캐시의 future 가 바뀌지 않도록 감싼다.
+		return getFuture(Objects.requireNonNull(key), true).thenApply(Function.identity());
+	}
+
+	// 로드가 끝난 값만 돌려주고 로드는 하지 않는다.
+	public V getIfPresent(K key) {
+		LoadingFuture<V> future = map.get(Objects.requireNonNull(key));
+		if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+			missCount.increment();
+			return null;
+		}
+		hitCount.increment();
+		return future.join();
+	}
+
+	public void put(K key, V value) {
+		LoadingFuture<V> future = new LoadingFuture<>();
+		future.complete(Objects.requireNonNull(value));
+		map.put(Objects.requireNonNull(key), future);
+	}
+
+	// 로드 중인 항목을 지우면 기다리던 호출은 그 로드의 결과를 받지만 결과는 저장되지 않는다.
+	public void invalidate(K key) {
+		map.remove(Objects.requireNonNull(key));
+	}
+
+	public void invalidateAll() {
+		map.clear();
+	}
+
+	// 로드 중인 항목도 포함한다.
+	public int size() {
+		return map.size();
+	}
+
+	public int drainCleared() {
+		return map.drainCleared();
+	}
+
+	public CacheStats stats() {
+		return new CacheStats(hitCount.sum(), missCount.sum(), 0,
+				loadSuccessCount.sum(), loadFailureCount.sum(), totalLoadTime.sum());
+	}
+
+	private LoadingFuture<V> getFuture(K key, boolean async) {
+		LoadingFuture<V> future = map.get(key);
+		if (future == null) {
+			LoadingFuture<V> created = new LoadingFuture<>();
+			future = map.putIfAbsent(key, created);
+			if (future == null) {
+				missCount.increment();
+				if (async && executor != null) {
+					try {
+						executor.execute(() -> load(key, created));
+					} catch (RuntimeException e) {
+						map.remove(key, created);
+						created.completeExceptionally(e);
+					}
+				} else {
+					load(key, created);
+				}
+				return created;
+			}
+		}
+		// 로더 안에서 같은 키를 요청하면 자신의 로드를 기다리게 된다.
+		if (future.loader == Thread.currentThread()) {
+			throw new IllegalStateException("Recursive load: " + key);
+		}
+		hitCount.increment();
+		return future;
+	}
+
+	private void load(K key, LoadingFuture<V> future) {
+		future.loader = Thread.currentThread();
+		long start = System.nanoTime();
+		V value;
+		try {
+			value = loader.apply(key);
+		} catch (Throwable e) {
+			totalLoadTime.add(System.nanoTime() - start);
+			loadFailureCount.increment();
+			map.remove(key, future);
+			future.loader = null;
+			future.completeExceptionally(e);
+			return;
+		}
+		totalLoadTime.add(System.nanoTime() - start);
+		future.loader = null;
+		if (value == null) {
+			loadFailureCount.increment();
+			map.remove(key, future);
+		} else {
+			loadSuccessCount.increment();
+		}
+		future.complete(value);
+	}
+
+	private static <V> V join(CompletableFuture<V> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	// 같은 스레드의 재귀 로드를 알아낼 수 있도록 로드 중인 스레드를 기록한다.
+	static final class LoadingFuture<V> extends CompletableFuture<V> {
+		volatile Thread loader;
+	}
+}
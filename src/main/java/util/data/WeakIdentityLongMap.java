@@ -0,0 +1,122 @@
+package util.data;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToIntFunction;
+
+// 값이 long 인 WeakIdentityMap.
+// 값을 long 배열에 저장하므로 카운터나 ID 로 쓸 때 값의 박싱과 증가 시 할당이 없다.
+public class WeakIdentityLongMap<K> extends WeakIdentityPrimitiveMap<K> {
+	// refs 와 같은 인덱스에 값을 저장한다.
+	private long[] vals;
+
+	public WeakIdentityLongMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public WeakIdentityLongMap(int expectedSize) {
+		this(expectedSize, ExpungePolicy.eager());
+	}
+
+	// WeakIdentityMap(ToIntFunction) 과 같이 키가 가진 id 를 해시로 쓴다. 키는 여전히 == 으로 비교한다.
+	public WeakIdentityLongMap(ToIntFunction<? super K> hashFunction) {
+		this(DEFAULT_CAPACITY, ExpungePolicy.eager(), ReferenceStrength.WEAK, hashFunction);
+	}
+
+	public WeakIdentityLongMap(ExpungePolicy expungePolicy) {
+		this(DEFAULT_CAPACITY, expungePolicy);
+	}
+
+	public WeakIdentityLongMap(int expectedSize, ExpungePolicy expungePolicy) {
+		this(expectedSize, expungePolicy, ReferenceStrength.WEAK);
+	}
+
+	// keyStrength 는 WEAK 또는 SOFT 이다.
+	public WeakIdentityLongMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength) {
+		this(expectedSize, expungePolicy, keyStrength, IDENTITY_HASH);
+	}
+
+	public WeakIdentityLongMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, ToIntFunction<? super K> hashFunction) {
+		super(expectedSize, expungePolicy, keyStrength, hashFunction);
+	}
+
+	@Override
+	Object allocateValues(int capacity) {
+		long[] old = vals;
+		vals = new long[capacity];
+		return old;
+	}
+
+	@Override
+	void moveValue(Object oldValues, int from, int to) {
+		vals[to] = ((long[]) oldValues)[from];
+	}
+
+	@Override
+	void clearValue(int index) {
+		vals[index] = 0;
+	}
+
+	@Override
+	void clearValues() {
+		Arrays.fill(vals, 0);
+	}
+
+	@Override
+	void valuesFootprint(Footprint footprint) {
+		footprint.add("values", Footprint.arrayBytes(vals.length, 8));
+	}
+
+	@Override
+	void appendValue(StringBuilder sb, int index) {
+		sb.append(vals[index]);
+	}
+
+	// 키가 없으면 0 을 돌려준다.
+	public long getLong(Object key) {
+		return getOrDefault(key, 0);
+	}
+
+	public long getOrDefault(Object key, long defaultValue) {
+		int index = slotForRead(key);
+		return index < 0 ? defaultValue : vals[index];
+	}
+
+	// 이전 값을 돌려준다. 키가 없었으면 0 을 돌려준다.
+	public long putLong(K key, long value) {
+		int index = slotForWrite(key);
+		if (index < 0) {
+			vals[-index - 1] = value;
+			return 0;
+		}
+		long old = vals[index];
+		vals[index] = value;
+		return old;
+	}
+
+	// 키가 없으면 0 에 더한다.
+	public long addAndGet(K key, long delta) {
+		int index = slotForWrite(key);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return vals[index] += delta;
+	}
+
+	// 제거된 값을 돌려준다. 키가 없었으면 0 을 돌려준다.
+	public long removeLong(Object key) {
+		int index = slotForRemove(key);
+		if (index < 0) {
+			return 0;
+		}
+		long old = vals[index];
+		removeSlot(index);
+		return old;
+	}
+
+	public void forEach(ObjLongConsumer<? super K> action) {
+		Objects.requireNonNull(action);
+		forEachSlot((k, i) -> action.accept(k, vals[i]));
+	}
+}
@@ -2,141 +2,631 @@ package util.data;
 
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.AbstractCollection;
+import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.ConcurrentModificationException;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
-public class WeakIdentityMap<K, V> implements Map<K, V> {
-	// List<Entry> 의 길이는 대부분 1일 것이다.
-	private Map<Integer, List<Entry>> hashCodeEntriesMap = new HashMap<>();
-	private int size;
-	private int modCount;
-	
-	transient private Function<Object, Integer> hashCodeMapper = System::identityHashCode;
-	transient private ReferenceQueue<K> refQueue = new ReferenceQueue<K>();
+public class WeakIdentityMap<K, V> extends WeakIdentityTable<K> implements Map<K, V> {
+	// refs 와 같은 인덱스에 값을 저장한다. 값의 참조 강도가 STRONG 이 아니면 ValueReference 로 감싸서 저장한다.
+	private Object[] vals;
+	private final ReferenceStrength valueStrength;
 
 	transient private Set<K> keySet;
 	transient private Collection<V> values;
 	transient private Set<Map.Entry<K, V>> entrySet;
 
+	// setRemovalListener 를 호출하기 전에는 null 이며, 이때 알림 비용은 null 검사뿐이다.
+	transient private RemovalListener<? super K, ? super V> removalListener;
+	transient private Executor removalExecutor;
+	transient private ArrayList<Removal<K, V>> pendingRemovals;
+
+	public WeakIdentityMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public WeakIdentityMap(int expectedSize) {
+		this(expectedSize, ExpungePolicy.eager());
+	}
+
+	// 키가 이미 고유한 id 를 가지고 있으면 그 값을 해시로 써서 System.identityHashCode 비용을 피한다.
+	// 키는 여전히 == 으로 비교하므로 해시가 같은 키들은 느려질 뿐 섞이지 않는다.
+	// 해시는 키가 맵에 있는 동안 바뀌지 않아야 하고, K 가 아닌 객체로 get 등을 호출하면 ClassCastException 이 날 수 있다.
+	public WeakIdentityMap(ToIntFunction<? super K> hashFunction) {
+		this(DEFAULT_CAPACITY, ExpungePolicy.eager(), ReferenceStrength.WEAK, ReferenceStrength.STRONG, hashFunction);
+	}
+
+	public WeakIdentityMap(ExpungePolicy expungePolicy) {
+		this(DEFAULT_CAPACITY, expungePolicy);
+	}
+
+	public WeakIdentityMap(int expectedSize, ExpungePolicy expungePolicy) {
+		this(expectedSize, expungePolicy, ReferenceStrength.WEAK, ReferenceStrength.STRONG);
+	}
+
+	// keyStrength 는 WEAK 또는 SOFT, valueStrength 는 STRONG, WEAK, SOFT 중 하나이다.
+	// 값이 수거되면 그 항목도 정리되므로 SOFT 를 쓰면 힙이 부족할 때만 비워지는 캐시로 쓸 수 있다.
+	public WeakIdentityMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, ReferenceStrength valueStrength) {
+		this(expectedSize, expungePolicy, keyStrength, valueStrength, IDENTITY_HASH);
+	}
+
+	public WeakIdentityMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, ReferenceStrength valueStrength,
+			ToIntFunction<? super K> hashFunction) {
+		super(expectedSize, expungePolicy, keyStrength, hashFunction);
+		this.valueStrength = Objects.requireNonNull(valueStrength);
+	}
+
+	public ReferenceStrength getValueStrength() {
+		return valueStrength;
+	}
+
+	public void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+		setRemovalListener(listener, null);
+	}
+
+	// 항목이 빠질 때마다 알림을 모아 두었다가 그 연산이 끝날 때 한 번에 전달한다. GC 된 키는 정리한 연산이나 drainCleared 에서 전달된다.
+	// 사용자 함수를 부르는 중에 빠진 항목은 그 함수를 부른 연산이 끝날 때 전달한다. executor 가 있으면 한 묶음을 작업 하나로 넘겨 그 스레드에서 호출한다.
+	// executor 가 null 이거나 작업을 거부하면 호출한 스레드에서 전달한다. listener 가 null 이면 알림을 끈다.
+	public void setRemovalListener(RemovalListener<? super K, ? super V> listener, Executor executor) {
+		afterExpunge();
+		removalListener = listener;
+		removalExecutor = executor;
+		pendingRemovals = listener == null ? null : new ArrayList<>();
+	}
+
+	public RemovalListener<? super K, ? super V> getRemovalListener() {
+		return removalListener;
+	}
+
+	@Override
+	Object allocateValues(int capacity) {
+		Object[] old = vals;
+		vals = new Object[capacity];
+		return old;
+	}
+
+	@Override
+	void moveValue(Object oldValues, int from, int to) {
+		vals[to] = ((Object[]) oldValues)[from];
+	}
+
+	@Override
+	void clearValue(int index) {
+		clearValueReference(vals[index]);
+		vals[index] = null;
+	}
+
+	// 더 이상 쓰지 않는 값의 참조가 큐에 들어가지 않도록 한다.
+	private void clearValueReference(Object value) {
+		if (valueStrength != ReferenceStrength.STRONG && value != null) {
+			((Reference<?>) value).clear();
+		}
+	}
+
+	@Override
+	void clearValues() {
+		Arrays.fill(vals, null);
+	}
+
+	@Override
+	void valuesFootprint(Footprint footprint) {
+		footprint.add("values", Footprint.arrayBytes(vals.length, 4));
+		if (valueStrength != ReferenceStrength.STRONG) {
+			// 값 참조는 키 참조의 hashCode 대신 키 참조를 가리키는 필드를 가지므로 크기가 같다.
+			footprint.add("valueReferences", (long) size * Footprint.referenceBytes(valueStrength));
+		}
+	}
+
+	@Override
+	int indexOfCleared(Reference<?> ref) {
+		if (valueStrength != ReferenceStrength.STRONG && ref instanceof ValueReference) {
+			// 값이 이미 교체되었으면 항목을 지우지 않는다.
+			int index = indexOfRef(((ValueReference) ref).getKeyRef());
+			return index >= 0 && vals[index] == ref ? index : -1;
+		}
+		return super.indexOfCleared(ref);
+	}
+
+	@Override
+	void removeAt(int index, RemovalCause cause) {
+		if (removalListener != null) {
+			pendingRemovals.add(new Removal<K, V>(keyAt(refs, index), valueAt(index), cause));
+		}
+		super.removeAt(index, cause);
+	}
+
+	@Override
+	void afterExpunge() {
+		if (pendingRemovals != null && !pendingRemovals.isEmpty()) {
+			dispatchRemovals();
+		}
+	}
+
+	// 쓰기 연산이 끝날 때 호출해 그 연산에서 빠진 항목의 알림을 전달한다.
+	private void flushRemovals() {
+		if (pendingRemovals != null && !pendingRemovals.isEmpty() && !inCallback()) {
+			dispatchRemovals();
+		}
+	}
+
+	private void dispatchRemovals() {
+		ArrayList<Removal<K, V>> batch = pendingRemovals;
+		pendingRemovals = new ArrayList<>();
+		RemovalListener<? super K, ? super V> listener = removalListener;
+		if (removalExecutor != null) {
+			try {
+				removalExecutor.execute(() -> deliver(listener, batch));
+				return;
+			} catch (RejectedExecutionException e) {
+			}
+		}
+		deliver(listener, batch);
+	}
+
+	// 리스너의 예외가 나머지 알림이나 맵 연산을 막지 않도록 스레드의 예외 처리기로 넘긴다.
+	private static <K, V> void deliver(RemovalListener<? super K, ? super V> listener, ArrayList<Removal<K, V>> batch) {
+		for (Removal<K, V> removal : batch) {
+			try {
+				listener.onRemoval(removal.key, removal.value, removal.cause);
+			} catch (RuntimeException e) {
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+	// 값을 읽거나 쓴 뒤, 또는 읽기에서 키를 찾지 못한 뒤 호출된다. inserted 는 새 키의 슬롯인지 여부이다.
+	// 크기나 접근 순서, 통계를 관리하는 하위 클래스가 재정의한다.
+	void afterRead(int index) {
+	}
+
+	void afterMiss(Object key) {
+	}
+
+	void afterWrite(int index, boolean inserted) {
+	}
+
 	@Override
 	public V get(Object key) {
-		expunge();
-		int hashCode = hashCodeMapper.apply(key);
-		return hashCodeEntriesMap.getOrDefault(hashCode, Collections.emptyList()).stream()
-				.filter(e -> e.getKey() == key)
-				.map(Entry::getValue)
-				.findAny().orElse(null);
+		expungeOnRead();
+		int index = indexOf(key);
+		if (index < 0) {
+			afterMiss(key);
+			return null;
+		}
+		afterRead(index);
+		return valueAt(index);
+	}
+
+	@Override
+	public V getOrDefault(Object key, V defaultValue) {
+		expungeOnRead();
+		int index = indexOf(key);
+		if (index < 0) {
+			afterMiss(key);
+			return defaultValue;
+		}
+		afterRead(index);
+		return valueAt(index);
 	}
 
 	@Override
 	public V put(K key, V value) {
 		expunge();
-		if (key == null) {
-			throw new IllegalArgumentException("Null key");
-		}
-		int hashCode = hashCodeMapper.apply(key);
-		List<Entry> list = hashCodeEntriesMap.computeIfAbsent(hashCode, k -> new LinkedList<>());
-		Entry entry = list.stream().filter(e -> e.getKey() == key).findAny().orElse(null);
-		if (entry == null) {
-			entry = new Entry(new IdentityWeakReference<K>(key, refQueue));
-			list.add(entry);
-			modCount++;
-			size++;
+		int index = insertKey(key);
+		if (index < 0) {
+			index = -index - 1;
+			setValueAt(index, value);
+			afterWrite(index, true);
+			flushRemovals();
+			return null;
 		}
-		return entry.setValue(value);
+		V old = valueAt(index);
+		setValueAt(index, value);
+		afterWrite(index, false);
+		flushRemovals();
+		return old;
 	}
 
 	@Override
 	public V remove(Object key) {
 		expunge();
-		int hashCode = hashCodeMapper.apply(key);
-		Entry removed = removeMatched(hashCode, e -> e.getKey() == key);
-		return removed == null ? null : removed.getValue();
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		V old = valueAt(index);
+		removeAt(index);
+		shrinkIfSparse();
+		flushRemovals();
+		return old;
+	}
+
+	// 아래의 Map 기본 메서드들은 키를 한 번만 탐색하고 정리도 한 번만 한다.
+	// 없는 키는 probe 가 찾아 둔 슬롯에 바로 넣는다.
+	@Override
+	public V putIfAbsent(K key, V value) {
+		expunge();
+		int hashCode = hashOf(key);
+		int index = probe(key, hashCode);
+		if (index >= 0) {
+			V old = valueAt(index);
+			if (old == null) {
+				setValueAt(index, value);
+				afterWrite(index, false);
+				flushRemovals();
+			}
+			return old;
+		}
+		insertAt(-index - 1, key, hashCode, value);
+		flushRemovals();
+		return null;
 	}
 
 	@Override
-	public int size() {
+	public boolean remove(Object key, Object value) {
 		expunge();
-		return size;
+		int index = indexOf(key);
+		if (index < 0 || !Objects.equals(valueAt(index), value)) {
+			return false;
+		}
+		removeAt(index);
+		shrinkIfSparse();
+		flushRemovals();
+		return true;
 	}
 
-	private void expunge() {
-		for (;;) {
-			Reference<? extends K> ref = refQueue.poll();
-			if (ref == null) {
-				break;
-			}
-			removeMatched(ref.hashCode(), e -> e.getKeyRef() == ref);
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		expunge();
+		int index = indexOf(key);
+		if (index < 0 || !Objects.equals(valueAt(index), oldValue)) {
+			return false;
 		}
+		setValueAt(index, newValue);
+		afterWrite(index, false);
+		flushRemovals();
+		return true;
 	}
-	
-	private Entry removeMatched(int hashCode, Predicate<Entry> match) {
-		List<Entry> list = hashCodeEntriesMap.getOrDefault(hashCode, Collections.emptyList());
-		Iterator<Entry> iterator = list.iterator();
-		while (iterator.hasNext()) {
-			Entry entry = iterator.next();
-			if (match.test(entry)) {
-				iterator.remove();
-				if (list.isEmpty()) {
-					hashCodeEntriesMap.remove(hashCode);
-				}
-				modCount++;
-				size--;
-				return entry;
+
+	@Override
+	public V replace(K key, V value) {
+		expunge();
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		V old = valueAt(index);
+		setValueAt(index, value);
+		afterWrite(index, false);
+		flushRemovals();
+		return old;
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		Objects.requireNonNull(mappingFunction);
+		expunge();
+		int hashCode = hashOf(key);
+		int index = probe(key, hashCode);
+		if (index >= 0) {
+			V old = valueAt(index);
+			if (old != null) {
+				afterRead(index);
+				return old;
 			}
+		} else {
+			afterMiss(key);
 		}
-		return null;
+		V value = apply(mappingFunction, key);
+		if (value != null) {
+			store(index, key, hashCode, value);
+			flushRemovals();
+		}
+		return value;
 	}
 
 	@Override
-	public boolean isEmpty() {
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
 		expunge();
-		return size == 0;
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		V old = valueAt(index);
+		if (old == null) {
+			return null;
+		}
+		V value = apply(remappingFunction, key, old);
+		if (value == null) {
+			removeAt(index);
+			shrinkIfSparse();
+		} else {
+			setValueAt(index, value);
+			afterWrite(index, false);
+		}
+		flushRemovals();
+		return value;
 	}
 
 	@Override
-	public boolean containsKey(Object key) {
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
 		expunge();
-		int hashCode = hashCodeMapper.apply(key);
-		return hashCodeEntriesMap.getOrDefault(hashCode, Collections.emptyList()).stream()
-				.anyMatch(e -> e.getKey() == key);
+		int hashCode = hashOf(key);
+		int index = probe(key, hashCode);
+		V old = index >= 0 ? valueAt(index) : null;
+		V value = apply(remappingFunction, key, old);
+		if (value == null) {
+			if (index >= 0) {
+				removeAt(index);
+				shrinkIfSparse();
+			}
+		} else {
+			store(index, key, hashCode, value);
+		}
+		flushRemovals();
+		return value;
 	}
 
 	@Override
-	public boolean containsValue(Object value) {
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
+		Objects.requireNonNull(value);
 		expunge();
-		return hashCodeEntriesMap.values().stream()
-				.anyMatch(list -> list.stream().anyMatch(e -> Objects.equals(e.getValue(), value)));
+		int hashCode = hashOf(key);
+		int index = probe(key, hashCode);
+		V old = index >= 0 ? valueAt(index) : null;
+		V newValue = value;
+		if (old != null) {
+			newValue = apply(remappingFunction, old, value);
+		}
+		if (newValue == null) {
+			removeAt(index);
+			shrinkIfSparse();
+		} else {
+			store(index, key, hashCode, newValue);
+		}
+		flushRemovals();
+		return newValue;
+	}
+
+	// compute 계열의 함수를 부른다. 함수 안에서 이 맵을 바꾸면 찾아 둔 슬롯이 더 이상 맞지 않으므로 예외를 던진다.
+	// 함수가 읽기만 하면 정리와 만료를 미루므로 GC 시점과 관계없이 예외가 나지 않는다.
+	private <T, R> R apply(Function<? super T, ? extends R> function, T t) {
+		int mc = modCount;
+		R result;
+		enterCallback();
+		try {
+			result = function.apply(t);
+		} finally {
+			exitCallback();
+		}
+		if (mc != modCount) {
+			throw new ConcurrentModificationException();
+		}
+		return result;
+	}
+
+	private <T, U, R> R apply(BiFunction<? super T, ? super U, ? extends R> function, T t, U u) {
+		int mc = modCount;
+		R result;
+		enterCallback();
+		try {
+			result = function.apply(t, u);
+		} finally {
+			exitCallback();
+		}
+		if (mc != modCount) {
+			throw new ConcurrentModificationException();
+		}
+		return result;
 	}
 
+	// probe 의 결과가 있는 슬롯이면 값을 바꾸고, 없으면 그 슬롯에 새로 넣는다.
+	private void store(int index, K key, int hashCode, V value) {
+		if (index >= 0) {
+			setValueAt(index, value);
+			afterWrite(index, false);
+		} else {
+			insertAt(-index - 1, key, hashCode, value);
+		}
+	}
+
+	private void insertAt(int free, K key, int hashCode, V value) {
+		int index = insertAt(free, key, hashCode);
+		setValueAt(index, value);
+		afterWrite(index, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	V valueAt(int index) {
+		Object value = vals[index];
+		// 인터페이스에 대한 instanceof 는 실패할 때 느리므로 참조 강도로 구분한다.
+		if (valueStrength == ReferenceStrength.STRONG || value == null) {
+			return (V) value;
+		}
+		return ((Reference<V>) value).get();
+	}
+
+	private void setValueAt(int index, V value) {
+		if (removalListener != null) {
+			V old = valueAt(index);
+			if (old != null && old != value) {
+				pendingRemovals.add(new Removal<K, V>(keyAt(refs, index), old, RemovalCause.REPLACED));
+			}
+		}
+		clearValueReference(vals[index]);
+		if (valueStrength == ReferenceStrength.STRONG || value == null) {
+			vals[index] = value;
+		} else if (valueStrength == ReferenceStrength.SOFT) {
+			vals[index] = new SoftValueReference<V>(value, refs[index], refQueue);
+		} else {
+			vals[index] = new WeakValueReference<V>(value, refs[index], refQueue);
+		}
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		expungeOnRead();
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			Object slot = tab[i];
+			if (slot != null && slot != TOMBSTONE && Objects.equals(valueAt(i), value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// 정리는 한 번만 하고, 넣을 항목 수만큼 한 번에 늘린 뒤 키마다 탐색 한 번으로 넣는다.
 	@Override
 	public void putAll(Map<? extends K, ? extends V> m) {
+		int n = m.size();
+		if (n == 0) {
+			return;
+		}
+		expunge();
+		ensureCapacity((int) Math.min((long) size + n, presizeLimit()));
+		for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+			K key = e.getKey();
+			int hashCode = hashOf(key);
+			store(probe(key, hashCode), key, hashCode, e.getValue());
+		}
+		flushRemovals();
+	}
+
+	// putAll 이 미리 늘릴 최대 항목 수. 크기가 제한된 하위 클래스가 재정의한다.
+	int presizeLimit() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		Objects.requireNonNull(action);
+		int mc = modCount;
+		enterCallback();
+		try {
+			Object[] tab = refs;
+			for (int i = 0; i < tab.length; i++) {
+				K key = keyAt(tab, i);
+				if (key != null) {
+					action.accept(key, valueAt(i));
+					if (modCount != mc) {
+						throw new ConcurrentModificationException();
+					}
+				}
+			}
+		} finally {
+			exitCallback();
+		}
+		flushRemovals();
+	}
+
+	// 슬롯에서 바로 값을 바꾼다. 바꾼 값마다 afterWrite 를 호출하므로 크기가 제한된 하위 클래스는 도중에 항목을 내보낼 수 있다.
+	// 내보낸 슬롯은 TOMBSTONE 이 되어 건너뛰며 테이블은 재해시되지 않는다.
+	@Override
+	public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+		Objects.requireNonNull(function);
+		expunge();
+		enterCallback();
+		try {
+			Object[] tab = refs;
+			for (int i = 0; i < tab.length; i++) {
+				K key = keyAt(tab, i);
+				if (key == null) {
+					continue;
+				}
+				int mc = modCount;
+				V value = function.apply(key, valueAt(i));
+				if (mc != modCount) {
+					throw new ConcurrentModificationException();
+				}
+				setValueAt(i, value);
+				afterWrite(i, false);
+			}
+		} finally {
+			exitCallback();
+		}
+		flushRemovals();
+	}
+
+	// 뷰의 removeIf 가 쓴다. 슬롯에서 바로 지우고 다 지운 뒤 한 번만 줄인다.
+	private boolean removeIf(SlotPredicate<K> filter) {
 		expunge();
-		m.forEach((k, v) -> put(k, v));
+		int mc = modCount;
+		boolean removed = false;
+		enterCallback();
+		try {
+			Object[] tab = refs;
+			for (int i = 0; i < tab.length; i++) {
+				K key = keyAt(tab, i);
+				if (key == null) {
+					continue;
+				}
+				boolean remove = filter.test(i, key);
+				if (modCount != mc) {
+					throw new ConcurrentModificationException();
+				}
+				if (remove) {
+					removeAt(i);
+					mc = modCount;
+					removed = true;
+				}
+			}
+		} finally {
+			exitCallback();
+		}
+		if (removed) {
+			shrinkIfSparse();
+			flushRemovals();
+		}
+		return removed;
 	}
 
+	private interface SlotPredicate<K> {
+		boolean test(int index, K key);
+	}
+
+	// 리스너가 있으면 지운 항목마다 EXPLICIT 알림을 보낸다.
 	@Override
 	public void clear() {
+		if (removalListener == null) {
+			super.clear();
+			return;
+		}
 		expunge();
-		hashCodeEntriesMap.clear();
-		modCount++;
-		size = 0;
+		ArrayList<Removal<K, V>> removals = new ArrayList<>(size);
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			K key = keyAt(tab, i);
+			if (key != null) {
+				removals.add(new Removal<K, V>(key, valueAt(i), RemovalCause.EXPLICIT));
+			}
+		}
+		super.clear();
+		pendingRemovals.addAll(removals);
+		flushRemovals();
 	}
 
 	@Override
@@ -168,34 +658,101 @@ public class WeakIdentityMap<K, V> implements Map<K, V> {
 		}
 		return es;
 	}
-	
+
+	// 지금 살아있는 항목을 배열 하나에 복사해 두고 순회한다.
+	// 순회 중 맵을 바꿔도 예외가 나지 않고, 복사한 키는 순회가 끝날 때까지 GC 되지 않는다.
+	// 돌려주는 항목은 복사 시점의 값이며 setValue 를 지원하지 않는다. remove 는 맵에서 그 키를 지운다.
+	public Iterator<Map.Entry<K, V>> snapshotIterator() {
+		expungeOnRead();
+		Object[] tab = refs;
+		Object[] pairs = new Object[size * 2];
+		int n = 0;
+		for (int i = 0; i < tab.length; i++) {
+			K key = keyAt(tab, i);
+			if (key != null) {
+				pairs[n++] = key;
+				pairs[n++] = valueAt(i);
+			}
+		}
+		return new SnapshotIterator(pairs, n);
+	}
+
+	// 만들 때의 슬롯 배열을 순회하며 각 키의 현재 값을 돌려준다.
+	// 순회 중 같은 스레드에서 put, remove, 정리, 재해시가 일어나도 예외가 나지 않고 각 키는 최대 한 번 나온다.
+	// 순회 중 지워진 키는 아직 지나지 않았으면 나오지 않고, 재해시 뒤에 추가된 키는 나오지 않을 수 있다.
+	// 스레드 안전하지 않은 맵이므로 다른 스레드의 수정과 함께 쓰려면 ConcurrentWeakIdentityMap 을 사용한다.
+	public Iterator<Map.Entry<K, V>> weaklyConsistentIterator() {
+		return new WeaklyConsistentIterator();
+	}
+
+	// IdentityHashMap 과 같이 키는 동일성, 값은 equals 로 비교한다.
+	// size 는 정리되지 않은 GC 된 키도 세므로 살아있는 항목 수끼리 비교한다.
 	@Override
 	public boolean equals(Object obj) {
-		if (obj instanceof WeakIdentityMap) {
-			return Objects.equals(hashCodeEntriesMap, ((WeakIdentityMap<?, ?>) obj).hashCodeEntriesMap);
+		if (obj == this) {
+			return true;
 		}
-		return false;
+		if (!(obj instanceof Map)) {
+			return false;
+		}
+		Map<?, ?> m = (Map<?, ?>) obj;
+		int live = 0;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			Object key = keyAt(tab, i);
+			if (key == null) {
+				continue;
+			}
+			Object value = valueAt(i);
+			if (value == null ? !(m.get(key) == null && m.containsKey(key)) : !value.equals(m.get(key))) {
+				return false;
+			}
+			live++;
+		}
+		return live == (m instanceof WeakIdentityMap ? ((WeakIdentityMap<?, ?>) m).liveSize() : m.size());
+	}
+
+	// GC 된 키의 항목은 equals 와 같이 제외한다.
+	@Override
+	public int hashCode() {
+		expungeOnRead();
+		int h = 0;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			Object key = keyAt(tab, i);
+			if (key != null) {
+				h += System.identityHashCode(key) ^ Objects.hashCode(valueAt(i));
+			}
+		}
+		return h;
 	}
 
 	abstract class BaseIterator {
 		private int expectedModCount; // for fast-fail
-		private Iterator<Map.Entry<Integer, List<Entry>>> mapIterator;
-		private Iterator<Entry> listIterator;
-		private List<Entry> list;
+		private final Object[] tab;
+		private int index;
+		private int lastIndex = -1;
+		// hasNext 와 next 사이에 GC 되지 않도록 다음 키를 강하게 참조한다.
+		private K nextKey;
+		private int nextIndex = -1;
 
 		BaseIterator() {
-			mapIterator = hashCodeEntriesMap.entrySet().iterator();
+			tab = refs;
 			expectedModCount = modCount;
 		}
 
+		@SuppressWarnings("unchecked")
 		public final boolean hasNext() {
-			while ((listIterator == null || !listIterator.hasNext())) {
-				if (mapIterator.hasNext()) {
-					list = mapIterator.next().getValue();
-					listIterator = list.iterator();
-				} else {
+			while (nextKey == null) {
+				if (index >= tab.length) {
 					return false;
 				}
+				int i = index++;
+				Object slot = tab[i];
+				if (slot != null && slot != TOMBSTONE) {
+					nextKey = ((Reference<K>) slot).get();
+					nextIndex = i;
+				}
 			}
 			return true;
 		}
@@ -207,22 +764,25 @@ public class WeakIdentityMap<K, V> implements Map<K, V> {
 			if (!hasNext()) {
 				throw new NoSuchElementException();
 			}
-			return listIterator.next();
+			Entry entry = new Entry(tab[nextIndex], nextIndex);
+			lastIndex = nextIndex;
+			nextKey = null;
+			return entry;
 		}
 
 		public final void remove() {
+			if (lastIndex < 0) {
+				throw new IllegalStateException();
+			}
 			if (modCount != expectedModCount) {
 				throw new ConcurrentModificationException();
 			}
-			
-			listIterator.remove();
-			if (list.isEmpty()) {
-				mapIterator.remove();
-			}
-			modCount++;
-			size--;
-			
+
+			removeAt(lastIndex);
+			lastIndex = -1;
+
 			expectedModCount = modCount;
+			flushRemovals();
 		}
 	}
 
@@ -243,107 +803,262 @@ public class WeakIdentityMap<K, V> implements Map<K, V> {
 			return nextEntry();
 		}
 	}
-	
+
+	final class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+		private final Object[] pairs;
+		private final int fence;
+		private int index;
+		private K lastKey;
+
+		SnapshotIterator(Object[] pairs, int fence) {
+			this.pairs = pairs;
+			this.fence = fence;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < fence;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Map.Entry<K, V> next() {
+			if (index >= fence) {
+				throw new NoSuchElementException();
+			}
+			K key = (K) pairs[index];
+			V value = (V) pairs[index + 1];
+			// 지나간 항목은 놓아 준다.
+			pairs[index] = null;
+			pairs[index + 1] = null;
+			index += 2;
+			lastKey = key;
+			return new AbstractMap.SimpleImmutableEntry<>(key, value);
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			WeakIdentityMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+
+	final class WeaklyConsistentIterator implements Iterator<Map.Entry<K, V>> {
+		private final Object[] tab = refs;
+		private int index;
+		// hasNext 와 next 사이에 GC 되지 않도록 다음 키를 강하게 참조한다.
+		private K nextKey;
+		private V nextValue;
+		private K lastKey;
+
+		@Override
+		public boolean hasNext() {
+			while (nextKey == null) {
+				if (index >= tab.length) {
+					return false;
+				}
+				int i = index++;
+				K key = keyAt(tab, i);
+				if (key == null) {
+					continue;
+				}
+				// 재해시되었으면 현재 테이블에서 다시 찾는다.
+				if (tab != refs && (i = indexOf(key)) < 0) {
+					continue;
+				}
+				nextKey = key;
+				nextValue = valueAt(i);
+			}
+			return true;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>(nextKey, nextValue);
+			lastKey = nextKey;
+			nextKey = null;
+			nextValue = null;
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null) {
+				throw new IllegalStateException();
+			}
+			WeakIdentityMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+
+	// 테이블의 슬롯 범위 [index, fence) 를 순회하고, 분할은 범위를 반으로 나눈다.
+	// 처음 사용할 때(late-binding) 테이블을 정하며, 빈 슬롯과 GC 된 키는 순회하면서 건너뛴다.
+	// size 는 GC 되었지만 정리되지 않은 키도 세므로 크기는 상한인 추정치이고 SIZED 가 아니다. 분할할 때마다 반으로 줄인다.
 	abstract class BaseSpliterator<T> implements Spliterator<T> {
-		private int expectedModCount;
-		private Spliterator<List<Entry>> listSpliterator;
-		private Iterator<Entry> iterator;
-		Function<Entry, T> mapper;
-		
-		BaseSpliterator(Function<Entry, T> mapper) {
-			this(hashCodeEntriesMap.values().spliterator(), modCount, mapper);
+		Object[] tab;
+		private int index;
+		// 처음 사용하기 전에는 -1
+		private int fence;
+		private long est;
+		private final int expectedModCount;
+
+		BaseSpliterator() {
+			this(null, 0, -1, 0, modCount);
 		}
 
-		BaseSpliterator(Spliterator<List<Entry>> listSpliterator, int expectedModCount, Function<Entry, T> mapper) {
-			this.listSpliterator = listSpliterator;
+		BaseSpliterator(Object[] tab, int index, int fence, long est, int expectedModCount) {
+			this.tab = tab;
+			this.index = index;
+			this.fence = fence;
+			this.est = est;
 			this.expectedModCount = expectedModCount;
-			this.mapper = mapper;
+		}
+
+		private int getFence() {
+			int hi = fence;
+			if (hi < 0) {
+				// 만든 뒤 사용하기 전에 바뀐 경우도 알린다.
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				tab = refs;
+				est = size;
+				hi = fence = tab.length;
+			}
+			return hi;
 		}
 
 		@Override
 		public boolean tryAdvance(Consumer<? super T> action) {
-			while (iterator == null || !iterator.hasNext()) {
-				if (!listSpliterator.tryAdvance(list -> iterator = list.iterator())) {
-					return false;
+			Objects.requireNonNull(action);
+			int hi = getFence();
+			while (index < hi) {
+				int i = index++;
+				K key = keyAt(tab, i);
+				if (key != null) {
+					action.accept(element(i, key));
+					if (modCount != expectedModCount) {
+						throw new ConcurrentModificationException();
+					}
+					return true;
 				}
 			}
-			action.accept(mapper.apply(iterator.next()));
-			if (modCount != expectedModCount)
-                throw new ConcurrentModificationException();
-			return true;
+			return false;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super T> action) {
+			Objects.requireNonNull(action);
+			int hi = getFence();
+			Object[] t = tab;
+			for (int i = index; i < hi; i++) {
+				K key = keyAt(t, i);
+				if (key != null) {
+					action.accept(element(i, key));
+				}
+			}
+			index = hi;
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
 		}
 
 		@Override
 		public Spliterator<T> trySplit() {
-			Spliterator<List<Entry>> subListSpliterator = listSpliterator.trySplit();
-			return subListSpliterator == null ? null : createSubSplitator(subListSpliterator, expectedModCount);
+			int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+			if (lo >= mid) {
+				return null;
+			}
+			index = mid;
+			return createSubSplitator(tab, lo, mid, est >>>= 1, expectedModCount);
 		}
-		
-		abstract BaseSpliterator<T> createSubSplitator(Spliterator<List<Entry>> listSpliterator, int expectedModCount);
+
+		abstract T element(int index, K key);
+
+		abstract BaseSpliterator<T> createSubSplitator(Object[] tab, int index, int fence, long est, int expectedModCount);
 
 		@Override
 		public long estimateSize() {
-			return listSpliterator.estimateSize();
+			getFence();
+			return est;
 		}
 	}
-	
+
 	final class KeySpliterator extends BaseSpliterator<K> {
 		public KeySpliterator() {
-			super(Entry::getKey);
 		}
-		
-		KeySpliterator(Spliterator<List<Entry>> listSpliterator, int expectedModCount, Function<Entry, K> mapper) {
-			super(listSpliterator, expectedModCount, mapper);
+
+		KeySpliterator(Object[] tab, int index, int fence, long est, int expectedModCount) {
+			super(tab, index, fence, est, expectedModCount);
 		}
-		
+
+		@Override
+		K element(int index, K key) {
+			return key;
+		}
+
 		@Override
-		BaseSpliterator<K> createSubSplitator(Spliterator<List<Entry>> listSpliterator, int expectedModCount) {
-			return new KeySpliterator(listSpliterator, expectedModCount, mapper);
+		BaseSpliterator<K> createSubSplitator(Object[] tab, int index, int fence, long est, int expectedModCount) {
+			return new KeySpliterator(tab, index, fence, est, expectedModCount);
 		}
 
 		@Override
 		public int characteristics() {
-			return DISTINCT;
+			return DISTINCT | NONNULL;
 		}
 	}
-	
+
 	final class ValueSpliterator extends BaseSpliterator<V> {
 		public ValueSpliterator() {
-			super(Entry::getValue);
 		}
-		
-		ValueSpliterator(Spliterator<List<Entry>> listSpliterator, int expectedModCount, Function<Entry, V> mapper) {
-			super(listSpliterator, expectedModCount, mapper);
+
+		ValueSpliterator(Object[] tab, int index, int fence, long est, int expectedModCount) {
+			super(tab, index, fence, est, expectedModCount);
+		}
+
+		@Override
+		V element(int index, K key) {
+			return valueAt(index);
 		}
-		
+
 		@Override
-		BaseSpliterator<V> createSubSplitator(Spliterator<List<Entry>> listSpliterator, int expectedModCount) {
-			return new ValueSpliterator(listSpliterator, expectedModCount, mapper);
+		BaseSpliterator<V> createSubSplitator(Object[] tab, int index, int fence, long est, int expectedModCount) {
+			return new ValueSpliterator(tab, index, fence, est, expectedModCount);
 		}
-		
+
 		@Override
 		public int characteristics() {
 			return 0;
 		}
 	}
-	
+
 	final class EntrySpliterator extends BaseSpliterator<Map.Entry<K, V>> {
 		public EntrySpliterator() {
-			super(e -> e);
 		}
-		
-		EntrySpliterator(Spliterator<List<Entry>> listSpliterator, int expectedModCount, Function<Entry, Map.Entry<K, V>> mapper) {
-			super(listSpliterator, expectedModCount, mapper);
+
+		EntrySpliterator(Object[] tab, int index, int fence, long est, int expectedModCount) {
+			super(tab, index, fence, est, expectedModCount);
+		}
+
+		@Override
+		Map.Entry<K, V> element(int index, K key) {
+			return new Entry(tab[index], index);
 		}
-		
+
 		@Override
-		BaseSpliterator<Map.Entry<K, V>> createSubSplitator(Spliterator<List<Entry>> listSpliterator, int expectedModCount) {
-			return new EntrySpliterator(listSpliterator, expectedModCount, mapper);
+		BaseSpliterator<Map.Entry<K, V>> createSubSplitator(Object[] tab, int index, int fence, long est, int expectedModCount) {
+			return new EntrySpliterator(tab, index, fence, est, expectedModCount);
 		}
-		
+
 		@Override
 		public int characteristics() {
-			return DISTINCT;
+			return DISTINCT | NONNULL;
 		}
 	}
 
@@ -373,7 +1088,29 @@ public class WeakIdentityMap<K, V> implements Map<K, V> {
 		}
 
 		public final void forEach(Consumer<? super K> action) {
-			WeakIdentityMap.this.forEach((k, v) -> action.accept(k));
+			Objects.requireNonNull(action);
+			int mc = modCount;
+			enterCallback();
+			try {
+				Object[] tab = refs;
+				for (int i = 0; i < tab.length; i++) {
+					K key = keyAt(tab, i);
+					if (key != null) {
+						action.accept(key);
+						if (modCount != mc) {
+							throw new ConcurrentModificationException();
+						}
+					}
+				}
+			} finally {
+				exitCallback();
+			}
+			flushRemovals();
+		}
+
+		public final boolean removeIf(Predicate<? super K> filter) {
+			Objects.requireNonNull(filter);
+			return WeakIdentityMap.this.removeIf((i, k) -> filter.test(k));
 		}
 	}
 
@@ -399,7 +1136,28 @@ public class WeakIdentityMap<K, V> implements Map<K, V> {
 		}
 
 		public final void forEach(Consumer<? super V> action) {
-			WeakIdentityMap.this.forEach((k, v) -> action.accept(v));
+			Objects.requireNonNull(action);
+			int mc = modCount;
+			enterCallback();
+			try {
+				Object[] tab = refs;
+				for (int i = 0; i < tab.length; i++) {
+					if (keyAt(tab, i) != null) {
+						action.accept(valueAt(i));
+						if (modCount != mc) {
+							throw new ConcurrentModificationException();
+						}
+					}
+				}
+			} finally {
+				exitCallback();
+			}
+			flushRemovals();
+		}
+
+		public final boolean removeIf(Predicate<? super V> filter) {
+			Objects.requireNonNull(filter);
+			return WeakIdentityMap.this.removeIf((i, k) -> filter.test(valueAt(i)));
 		}
 	}
 
@@ -439,33 +1197,63 @@ public class WeakIdentityMap<K, V> implements Map<K, V> {
 			return new EntrySpliterator();
 		}
 
+		@SuppressWarnings("unchecked")
 		public final void forEach(Consumer<? super Map.Entry<K, V>> action) {
 			if (action == null) {
 				throw new NullPointerException();
 			}
-//			int mc = modCount;
-			// hashmap, list 어느곳에서든 추가 또는 삭제가 발생할 경우 에러 발생하므로 따로 체크하지 않는다.
-			hashCodeEntriesMap.forEach((h, v) -> {
-				v.stream().forEach(action);
-			});
-//			if (modCount != mc) {
-//				throw new ConcurrentModificationException();
-//			}
+			int mc = modCount;
+			enterCallback();
+			try {
+				Object[] tab = refs;
+				for (int i = 0; i < tab.length; i++) {
+					Object slot = tab[i];
+					if (slot == null || slot == TOMBSTONE) {
+						continue;
+					}
+					K key = ((Reference<K>) slot).get();
+					if (key != null) {
+						action.accept(new Entry(slot, i));
+						if (modCount != mc) {
+							throw new ConcurrentModificationException();
+						}
+					}
+				}
+			} finally {
+				exitCallback();
+			}
+			flushRemovals();
+		}
+
+		public final boolean removeIf(Predicate<? super Map.Entry<K, V>> filter) {
+			Objects.requireNonNull(filter);
+			return WeakIdentityMap.this.removeIf((i, k) -> filter.test(new Entry(refs[i], i)));
 		}
 	}
 
+	// 테이블 슬롯에 대한 뷰, 슬롯이 같은 키를 가지고 있는 동안에는 값을 읽고 쓸 때 테이블에 반영된다.
 	public class Entry implements Map.Entry<K, V> {
-		private final WeakReference<K> keyRef;
+		private final Reference<K> keyRef;
+		private final int index;
+		// 키가 테이블에서 제거된 뒤에 돌려줄 마지막 값
 		private V value;
 
-		public Entry(WeakReference<K> keyRef) {
-			this.keyRef = keyRef;
+		@SuppressWarnings("unchecked")
+		Entry(Object keyRef, int index) {
+			this.keyRef = (Reference<K>) keyRef;
+			this.index = index;
+			this.value = valueAt(index);
 		}
 
-		public WeakReference<K> getKeyRef() {
+		public Reference<K> getKeyRef() {
 			return keyRef;
 		}
 
+		private boolean isMapped() {
+			Object[] tab = refs;
+			return index < tab.length && tab[index] == keyRef;
+		}
+
 		@Override
 		public K getKey() {
 			return keyRef.get();
@@ -473,36 +1261,87 @@ public class WeakIdentityMap<K, V> implements Map<K, V> {
 
 		@Override
 		public V getValue() {
+			if (isMapped()) {
+				value = valueAt(index);
+			}
 			return value;
 		}
 
 		@Override
 		public V setValue(V value) {
-			V old = this.value;
+			V old = getValue();
+			if (isMapped()) {
+				setValueAt(index, value);
+				afterWrite(index, false);
+				flushRemovals();
+			}
 			this.value = value;
 			return old;
 		}
-		
+
 		@Override
 		public boolean equals(Object obj) {
 			if (obj != null && obj instanceof Map.Entry) {
 				Map.Entry<?, ?> e = (Map.Entry<?, ?>)obj;
 				return getKey() == e.getKey() && Objects.equals(getValue(), e.getValue());
 			}
-			return false; 
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(getKey()) ^ Objects.hashCode(getValue());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
 		}
 	}
 
-	private class IdentityWeakReference<T> extends WeakReference<T> {
-		public IdentityWeakReference(T o, ReferenceQueue<T> q) {
-			super(o, q);
-			this.hashCode = hashCodeMapper.apply(o);
+	// 전달을 기다리는 제거 알림
+	private static final class Removal<K, V> {
+		final K key;
+		final V value;
+		final RemovalCause cause;
+
+		Removal(K key, V value, RemovalCause cause) {
+			this.key = key;
+			this.value = value;
+			this.cause = cause;
 		}
+	}
 
-		public int hashCode() {
-			return hashCode;
+	// 값의 참조가 큐에서 나왔을 때 슬롯을 찾기 위해 키의 참조를 가진다.
+	private interface ValueReference {
+		Object getKeyRef();
+	}
+
+	private static final class WeakValueReference<V> extends WeakReference<V> implements ValueReference {
+		private final Object keyRef;
+
+		WeakValueReference(V value, Object keyRef, ReferenceQueue<? super V> q) {
+			super(value, q);
+			this.keyRef = keyRef;
+		}
+
+		@Override
+		public Object getKeyRef() {
+			return keyRef;
+		}
+	}
+
+	private static final class SoftValueReference<V> extends SoftReference<V> implements ValueReference {
+		private final Object keyRef;
+
+		SoftValueReference(V value, Object keyRef, ReferenceQueue<? super V> q) {
+			super(value, q);
+			this.keyRef = keyRef;
 		}
 
-		private final int hashCode;
+		@Override
+		public Object getKeyRef() {
+			return keyRef;
+		}
 	}
 }
@@ -0,0 +1,66 @@
+package util.data;
+
+import java.util.ConcurrentModificationException;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+
+// 값을 기본형 배열에 저장하는 WeakIdentityIntMap, WeakIdentityLongMap 의 공통 부분.
+// 키 탐색, 정리, 제거 후 축소, 순회는 여기서 하고 하위 클래스는 슬롯 인덱스로 자기 값 배열만 읽고 쓴다.
+abstract class WeakIdentityPrimitiveMap<K> extends WeakIdentityTable<K> {
+	WeakIdentityPrimitiveMap(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, ToIntFunction<? super K> hashFunction) {
+		super(expectedSize, expungePolicy, keyStrength, hashFunction);
+	}
+
+	// 읽을 키의 슬롯, 없으면 -1 이다.
+	final int slotForRead(Object key) {
+		expungeOnRead();
+		return indexOf(key);
+	}
+
+	// 쓸 키의 슬롯. 키가 없으면 넣고 -(index + 1) 로 돌려주며 그 슬롯의 값은 0 이다.
+	final int slotForWrite(K key) {
+		expunge();
+		return insertKey(key);
+	}
+
+	// 지울 키의 슬롯, 없으면 -1 이다. 값을 읽은 뒤 removeSlot 으로 지운다.
+	final int slotForRemove(Object key) {
+		expunge();
+		return indexOf(key);
+	}
+
+	final void removeSlot(int index) {
+		removeAt(index);
+		shrinkIfSparse();
+	}
+
+	// 살아있는 키와 그 슬롯을 넘긴다.
+	final void forEachSlot(ObjIntConsumer<? super K> action) {
+		int mc = modCount;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			K key = keyAt(tab, i);
+			if (key != null) {
+				action.accept(key, i);
+				if (modCount != mc) {
+					throw new ConcurrentModificationException();
+				}
+			}
+		}
+	}
+
+	abstract void appendValue(StringBuilder sb, int index);
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		forEachSlot((k, i) -> {
+			if (sb.length() > 1) {
+				sb.append(", ");
+			}
+			sb.append(k).append('=');
+			appendValue(sb, i);
+		});
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,313 @@
+package util.data;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.ToIntFunction;
+
+// 값 없이 키만 가지는 약한 참조 동일성 집합, "이 객체를 본 적이 있는가" 용도.
+// WeakIdentityMap<E, Boolean> 과 같은 테이블을 쓰지만 값 배열이 없어 원소당 메모리는 약한 참조 하나와 슬롯 하나이다.
+// 원소는 == 으로 비교하며 equals 와 hashCode 도 IdentityHashMap.keySet() 과 같이 동일성 기준이다.
+public class WeakIdentitySet<E> extends WeakIdentityTable<E> implements Set<E> {
+	public WeakIdentitySet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public WeakIdentitySet(int expectedSize) {
+		this(expectedSize, ExpungePolicy.eager());
+	}
+
+	// WeakIdentityMap(ToIntFunction) 과 같이 원소가 가진 id 를 해시로 쓴다.
+	public WeakIdentitySet(ToIntFunction<? super E> hashFunction) {
+		this(DEFAULT_CAPACITY, ExpungePolicy.eager(), ReferenceStrength.WEAK, hashFunction);
+	}
+
+	public WeakIdentitySet(ExpungePolicy expungePolicy) {
+		this(DEFAULT_CAPACITY, expungePolicy);
+	}
+
+	public WeakIdentitySet(int expectedSize, ExpungePolicy expungePolicy) {
+		this(expectedSize, expungePolicy, ReferenceStrength.WEAK);
+	}
+
+	// keyStrength 는 WEAK 또는 SOFT 이다.
+	public WeakIdentitySet(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength) {
+		super(expectedSize, expungePolicy, keyStrength);
+	}
+
+	public WeakIdentitySet(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, ToIntFunction<? super E> hashFunction) {
+		super(expectedSize, expungePolicy, keyStrength, hashFunction);
+	}
+
+	@Override
+	Object allocateValues(int capacity) {
+		return null;
+	}
+
+	@Override
+	void moveValue(Object oldValues, int from, int to) {
+	}
+
+	@Override
+	void clearValue(int index) {
+	}
+
+	@Override
+	void clearValues() {
+	}
+
+	@Override
+	void valuesFootprint(Footprint footprint) {
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return containsKey(o);
+	}
+
+	// null 은 넣을 수 없다.
+	@Override
+	public boolean add(E e) {
+		expunge();
+		return insertKey(e) < 0;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		expunge();
+		int index = indexOf(o);
+		if (index < 0) {
+			return false;
+		}
+		removeAt(index);
+		shrinkIfSparse();
+		return true;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		expungeOnRead();
+		for (Object o : c) {
+			if (indexOf(o) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// 정리는 한 번만 하고 원소마다 탐색과 삽입만 한다.
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		expunge();
+		boolean modified = false;
+		for (E e : c) {
+			if (insertKey(e) < 0) {
+				modified = true;
+			}
+		}
+		return modified;
+	}
+
+	// c 의 원소와 동일한 객체를 지운다.
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		expunge();
+		boolean modified = false;
+		for (Object o : c) {
+			int index = indexOf(o);
+			if (index >= 0) {
+				removeAt(index);
+				modified = true;
+			}
+		}
+		if (modified) {
+			shrinkIfSparse();
+		}
+		return modified;
+	}
+
+	// c.contains 가 false 인 원소를 지운다.
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		expunge();
+		boolean modified = false;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			E e = keyAt(tab, i);
+			if (e != null && !c.contains(e)) {
+				removeAt(i);
+				modified = true;
+			}
+		}
+		if (modified) {
+			shrinkIfSparse();
+		}
+		return modified;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new ElementIterator();
+	}
+
+	// 살아있는 원소를 배열에 모아 만든다. 만든 뒤의 변경은 반영되지 않으며 예외도 던지지 않는다.
+	@Override
+	public Spliterator<E> spliterator() {
+		return Spliterators.spliterator(toArray(), Spliterator.DISTINCT | Spliterator.NONNULL);
+	}
+
+	@Override
+	public Object[] toArray() {
+		expungeOnRead();
+		Object[] a = new Object[size];
+		int n = 0;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length && n < a.length; i++) {
+			Object e = keyAt(tab, i);
+			if (e != null) {
+				a[n++] = e;
+			}
+		}
+		// 정리되지 않은 GC 된 원소가 있으면 size 보다 적다.
+		return n == a.length ? a : Arrays.copyOf(a, n);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] a) {
+		Object[] elements = toArray();
+		int n = elements.length;
+		if (a.length < n) {
+			a = (T[]) Array.newInstance(a.getClass().getComponentType(), n);
+		}
+		System.arraycopy(elements, 0, a, 0, n);
+		if (a.length > n) {
+			a[n] = null;
+		}
+		return a;
+	}
+
+	// IdentityHashMap.keySet() 과 같이 크기가 같고 모든 원소를 contains 하면 같다.
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof Set)) {
+			return false;
+		}
+		Set<?> s = (Set<?>) obj;
+		// size 는 정리되지 않은 GC 된 키도 세므로 살아있는 원소 수로 비교한다.
+		int live = 0;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			Object e = keyAt(tab, i);
+			if (e == null) {
+				continue;
+			}
+			if (!s.contains(e)) {
+				return false;
+			}
+			live++;
+		}
+		return live == (s instanceof WeakIdentitySet ? ((WeakIdentitySet<?>) s).liveSize() : s.size());
+	}
+
+	@Override
+	public int hashCode() {
+		expungeOnRead();
+		int h = 0;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			Object e = keyAt(tab, i);
+			if (e != null) {
+				h += System.identityHashCode(e);
+			}
+		}
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			Object e = keyAt(tab, i);
+			if (e != null) {
+				if (sb.length() > 1) {
+					sb.append(", ");
+				}
+				sb.append(e == this ? "(this Set)" : e);
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+	final class ElementIterator implements Iterator<E> {
+		private int expectedModCount; // for fast-fail
+		private final Object[] tab;
+		private int index;
+		private int lastIndex = -1;
+		// hasNext 와 next 사이에 GC 되지 않도록 다음 원소를 강하게 참조한다.
+		private E nextElement;
+		private int nextIndex = -1;
+
+		ElementIterator() {
+			tab = refs;
+			expectedModCount = modCount;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean hasNext() {
+			while (nextElement == null) {
+				if (index >= tab.length) {
+					return false;
+				}
+				int i = index++;
+				Object slot = tab[i];
+				if (slot != null && slot != TOMBSTONE) {
+					nextElement = ((Reference<E>) slot).get();
+					nextIndex = i;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public E next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			E e = nextElement;
+			lastIndex = nextIndex;
+			nextElement = null;
+			return e;
+		}
+
+		@Override
+		public void remove() {
+			if (lastIndex < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			removeAt(lastIndex);
+			lastIndex = -1;
+
+			expectedModCount = modCount;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package util.data;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// WeakIdentityTable 의 조회, 탐사 길이, 정리 통계.
+// 테이블과 같은 스레드(또는 같은 락)에서 기록하고, 다른 스레드에서는 약간 늦은 값을 읽을 수 있다.
+// 기록은 필드 증가뿐이므로 테이블의 연산 비용에 비해 작다.
+public class WeakIdentityStats implements WeakIdentityStatsMXBean {
+	private static final int HISTOGRAM_SIZE = 8;
+
+	private final WeakIdentityTable<?> table;
+
+	private long hitCount;
+	private long missCount;
+	private long probeCount;
+	private final long[] probeLengthHistogram = new long[HISTOGRAM_SIZE];
+	private long expungedCount;
+	private long expungeCount;
+	private long totalExpungeTime;
+	private long maxExpungeTime;
+
+	private ObjectName objectName;
+
+	WeakIdentityStats(WeakIdentityTable<?> table) {
+		this.table = table;
+	}
+
+	void recordLookup(boolean found, int probes) {
+		if (found) {
+			hitCount++;
+		} else {
+			missCount++;
+		}
+		probeCount += probes;
+		probeLengthHistogram[Math.min(HISTOGRAM_SIZE - 1, 32 - Integer.numberOfLeadingZeros(probes - 1))]++;
+	}
+
+	void recordExpunge(int removed, long nanos) {
+		expungedCount += removed;
+		expungeCount++;
+		totalExpungeTime += nanos;
+		if (nanos > maxExpungeTime) {
+			maxExpungeTime = nanos;
+		}
+	}
+
+	// 키 조회 중 키를 찾은 수, 쓰기 연산의 조회도 포함한다.
+	@Override
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount;
+	}
+
+	@Override
+	public double getAverageProbeLength() {
+		long lookups = hitCount + missCount;
+		return lookups == 0 ? 0.0 : (double) probeCount / lookups;
+	}
+
+	@Override
+	public long[] getProbeLengthHistogram() {
+		return probeLengthHistogram.clone();
+	}
+
+	// GC 된 키를 정리한 항목 수
+	@Override
+	public long getExpungedCount() {
+		return expungedCount;
+	}
+
+	// 한 개 이상 정리한 호출 수
+	@Override
+	public long getExpungeCount() {
+		return expungeCount;
+	}
+
+	// 정리에 걸린 시간의 합(나노초)
+	@Override
+	public long getTotalExpungeTime() {
+		return totalExpungeTime;
+	}
+
+	@Override
+	public long getMaxExpungeTime() {
+		return maxExpungeTime;
+	}
+
+	// 정리하지 않고 현재 값을 읽는다.
+	@Override
+	public int getSize() {
+		return table.size;
+	}
+
+	@Override
+	public int getCapacity() {
+		return table.refs.length;
+	}
+
+	@Override
+	public long getEstimatedRetainedBytes() {
+		return table.estimatedRetainedBytes();
+	}
+
+	@Override
+	public void reset() {
+		hitCount = 0;
+		missCount = 0;
+		probeCount = 0;
+		Arrays.fill(probeLengthHistogram, 0);
+		expungedCount = 0;
+		expungeCount = 0;
+		totalExpungeTime = 0;
+		maxExpungeTime = 0;
+	}
+
+	// 플랫폼 MBeanServer 에 util.data:type=WeakIdentityStats,name=<name> 으로 등록한다.
+	// 등록된 동안 MBeanServer 가 테이블을 강하게 참조하므로 다 쓰면 unregister 해야 한다.
+	public synchronized ObjectName register(String name) throws JMException {
+		if (objectName != null) {
+			throw new IllegalStateException("Already registered: " + objectName);
+		}
+		ObjectName on = new ObjectName("util.data:type=WeakIdentityStats,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+		objectName = on;
+		return on;
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (objectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "WeakIdentityStats[hitCount=" + hitCount + ", missCount=" + missCount
+				+ ", averageProbeLength=" + getAverageProbeLength() + ", expungedCount=" + expungedCount
+				+ ", totalExpungeTime=" + totalExpungeTime + ", maxExpungeTime=" + maxExpungeTime + "]";
+	}
+}
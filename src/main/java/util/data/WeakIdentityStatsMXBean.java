@@ -0,0 +1,29 @@
+package util.data;
+
+// WeakIdentityStats 를 JMX 로 공개하는 인터페이스.
+public interface WeakIdentityStatsMXBean {
+	long getHitCount();
+
+	long getMissCount();
+
+	double getAverageProbeLength();
+
+	// i 번째 값은 탐사 길이가 (2^(i-1), 2^i] 인 조회 수이다. 마지막 칸은 그보다 긴 조회를 모두 포함한다.
+	long[] getProbeLengthHistogram();
+
+	long getExpungedCount();
+
+	long getExpungeCount();
+
+	long getTotalExpungeTime();
+
+	long getMaxExpungeTime();
+
+	int getSize();
+
+	int getCapacity();
+
+	long getEstimatedRetainedBytes();
+
+	void reset();
+}
@@ -0,0 +1,460 @@
+package util.data;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.ToIntFunction;
+
+// 약한 참조 키의 선형 탐사(open addressing) 테이블.
+// 키 슬롯, 재해시, TOMBSTONE, GC 된 키의 정리를 담당하고 값 저장은 하위 클래스가 refs 와 같은 인덱스의 배열로 한다.
+abstract class WeakIdentityTable<K> {
+	static final int DEFAULT_CAPACITY = 16;
+	static final int MAXIMUM_CAPACITY = 1 << 30;
+	// 삭제된 슬롯 표시, 탐색은 계속 진행하고 삽입 시에는 재사용한다.
+	static final Object TOMBSTONE = new Object();
+	static final ToIntFunction<Object> IDENTITY_HASH = System::identityHashCode;
+
+	// 슬롯에는 null, TOMBSTONE, IdentityWeakReference 또는 IdentitySoftReference 중 하나가 들어간다.
+	Object[] refs;
+	int size;
+	// size + TOMBSTONE 수, threshold 를 넘으면 재해시한다.
+	private int used;
+	private int threshold;
+	// 연산을 시작할 때 size 가 이보다 작으면 줄인다. 늘리는 기준(2/3)과 멀리 두어 늘고 줄기를 반복하지 않게 한다.
+	private int shrinkThreshold;
+	// 자동으로 줄일 때의 하한, 생성할 때 요청한 크기의 용량이다.
+	private final int minimumCapacity;
+	int modCount;
+	// 0 보다 크면 사용자 함수를 부르는 중이므로 정리와 afterExpunge 를 미룬다.
+	// 함수가 맵을 읽기만 해도 GC 되거나 만료된 항목이 지워져 modCount 가 바뀌는 일을 막는다.
+	private int callbackDepth;
+	private final ExpungePolicy expungePolicy;
+	private final ReferenceStrength keyStrength;
+
+	// 해시 계산 시 박싱이 일어나지 않도록 ToIntFunction 을 사용한다.
+	transient final ToIntFunction<Object> hashCodeMapper;
+	// 키의 참조와 하위 클래스가 만드는 값의 참조가 함께 등록된다.
+	transient final ReferenceQueue<Object> refQueue = new ReferenceQueue<Object>();
+	// recordStats() 를 호출하기 전에는 null 이며, 이때 통계 비용은 null 검사뿐이다.
+	transient WeakIdentityStats stats;
+
+	WeakIdentityTable(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength) {
+		this(expectedSize, expungePolicy, keyStrength, IDENTITY_HASH);
+	}
+
+	@SuppressWarnings("unchecked")
+	WeakIdentityTable(int expectedSize, ExpungePolicy expungePolicy, ReferenceStrength keyStrength, ToIntFunction<? super K> hashFunction) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+		}
+		if (keyStrength != ReferenceStrength.WEAK && keyStrength != ReferenceStrength.SOFT) {
+			throw new IllegalArgumentException("Illegal key strength: " + keyStrength);
+		}
+		this.expungePolicy = Objects.requireNonNull(expungePolicy);
+		this.keyStrength = keyStrength;
+		// 탐색에는 K 가 아닌 키도 들어올 수 있으며 이때 hashFunction 이 ClassCastException 을 던질 수 있다.
+		this.hashCodeMapper = (ToIntFunction<Object>) (ToIntFunction<?>) Objects.requireNonNull(hashFunction);
+		int capacity = capacityFor(expectedSize);
+		minimumCapacity = capacity;
+		allocateValues(capacity);
+		allocate(capacity);
+	}
+
+	// 새 용량의 값 배열을 만들어 교체하고 이전 배열을 돌려준다.
+	abstract Object allocateValues(int capacity);
+
+	// 재해시 중 이전 값 배열의 from 위치 값을 현재 값 배열의 to 위치로 옮긴다.
+	abstract void moveValue(Object oldValues, int from, int to);
+
+	abstract void clearValue(int index);
+
+	abstract void clearValues();
+
+	// 재해시로 모든 슬롯을 옮긴 뒤 호출된다. 슬롯 인덱스로 부가 정보를 관리하는 하위 클래스가 재정의한다.
+	void afterRehash() {
+	}
+
+	// 연산을 시작할 때 정리한 직후와 drainCleared 끝에 호출된다. 정리로 쌓인 알림을 전달하는 하위 클래스가 재정의한다.
+	void afterExpunge() {
+	}
+
+	// 읽기에서 정리하지 않는 정책이면 GC 되었지만 아직 정리되지 않은 키도 포함된다.
+	public int size() {
+		expungeOnRead();
+		return size;
+	}
+
+	// 정리되지 않은 GC 된 키를 빼고 센다. equals 가 쓴다.
+	final int liveSize() {
+		int live = 0;
+		Object[] tab = refs;
+		for (int i = 0; i < tab.length; i++) {
+			if (keyAt(tab, i) != null) {
+				live++;
+			}
+		}
+		return live;
+	}
+
+	public boolean isEmpty() {
+		expungeOnRead();
+		return size == 0;
+	}
+
+	public boolean containsKey(Object key) {
+		expungeOnRead();
+		return indexOf(key) >= 0;
+	}
+
+	public void clear() {
+		expunge();
+		Arrays.fill(refs, null);
+		clearValues();
+		modCount++;
+		size = 0;
+		used = 0;
+		if (refs.length > minimumCapacity) {
+			rehash(minimumCapacity);
+		}
+	}
+
+	// GC 된 키 중 정리되지 않은 것을 모두 정리하고 정리한 수를 돌려준다.
+	// ExpungePolicy.manual() 등으로 정리를 미룬 경우 유지보수 스레드에서 호출한다.
+	// 이 테이블은 스레드 안전하지 않으므로 다른 연산과 같은 락 안에서 호출해야 한다.
+	public int drainCleared() {
+		int removed = expunge(ExpungePolicy.UNBOUNDED);
+		afterExpunge();
+		return removed;
+	}
+
+	public ExpungePolicy getExpungePolicy() {
+		return expungePolicy;
+	}
+
+	public ReferenceStrength getKeyStrength() {
+		return keyStrength;
+	}
+
+	// 용량을 살아있는 항목 수에 맞게 줄이고 TOMBSTONE 을 정리한다. 생성할 때 요청한 크기보다도 작아질 수 있다.
+	// 대량의 키가 GC 된 뒤 바로 메모리를 돌려받거나 순회 비용을 줄이고 싶을 때 호출한다.
+	public void trimToSize() {
+		expunge(ExpungePolicy.UNBOUNDED);
+		int capacity = capacityFor(size);
+		if (capacity < refs.length || used > size) {
+			rehash(capacity);
+		}
+		afterExpunge();
+	}
+
+	// expectedSize 개가 들어갈 때까지 재해시하지 않도록 한 번에 늘린다. 줄이지는 않는다.
+	// 대량 삽입 전에 호출하며, 재해시하면 찾아 둔 인덱스가 바뀌므로 연산의 시작에서만 호출한다.
+	final void ensureCapacity(int expectedSize) {
+		int capacity = capacityFor(expectedSize);
+		if (capacity > refs.length) {
+			rehash(capacity);
+		}
+	}
+
+	// 통계 수집을 시작하고 수집기를 돌려준다. 이미 수집 중이면 같은 수집기를 돌려준다.
+	public WeakIdentityStats recordStats() {
+		if (stats == null) {
+			stats = new WeakIdentityStats(this);
+		}
+		return stats;
+	}
+
+	// 통계를 수집하지 않으면 null 이다.
+	public WeakIdentityStats getStats() {
+		return stats;
+	}
+
+	// 테이블이 차지하는 메모리를 구조별로 추정한다. 정리하지 않으므로 다른 스레드에서 불러도 테이블을 바꾸지 않는다.
+	public Footprint footprint() {
+		Footprint footprint = new Footprint(size, refs.length);
+		footprint.add("slots", Footprint.arrayBytes(refs.length, 4));
+		footprint.add("keyReferences", (long) size * Footprint.referenceBytes(keyStrength));
+		valuesFootprint(footprint);
+		return footprint;
+	}
+
+	long estimatedRetainedBytes() {
+		return footprint().getHeapBytes();
+	}
+
+	// 값 배열 등 하위 클래스가 가진 부분을 더한다.
+	abstract void valuesFootprint(Footprint footprint);
+
+	final void expunge() {
+		if (callbackDepth > 0) {
+			return;
+		}
+		if (expunge(expungePolicy.getMaxPerOperation()) > 0) {
+			shrinkIfSparse();
+		}
+		afterExpunge();
+	}
+
+	final void expungeOnRead() {
+		if (callbackDepth > 0) {
+			return;
+		}
+		if (expungePolicy.isExpungeOnRead() && expunge(expungePolicy.getMaxPerOperation()) > 0) {
+			shrinkIfSparse();
+		}
+		afterExpunge();
+	}
+
+	// 사용자 함수를 부르기 전후에 짝지어 호출한다. 그사이의 정리는 함수가 끝난 뒤의 연산으로 미뤄진다.
+	final void enterCallback() {
+		callbackDepth++;
+	}
+
+	final void exitCallback() {
+		callbackDepth--;
+	}
+
+	final boolean inCallback() {
+		return callbackDepth > 0;
+	}
+
+	// 사용률이 1/3 이하가 되는 용량으로 줄인다.
+	// 찾아 둔 인덱스가 어긋나지 않도록 연산의 시작이나 끝에서, 이번 연산이 항목을 지웠을 때만 호출한다.
+	// 지우지 않은 연산에서 줄이면 순회 중인 반복자가 이유 없이 ConcurrentModificationException 을 던지게 된다.
+	final void shrinkIfSparse() {
+		if (size < shrinkThreshold) {
+			rehash(Math.max(minimumCapacity, capacityFor(size * 2)));
+		}
+	}
+
+	private int expunge(int max) {
+		Reference<?> ref;
+		if (max <= 0 || (ref = refQueue.poll()) == null) {
+			return 0;
+		}
+		// 정리할 것이 있을 때만 시간을 잰다.
+		long start = stats == null ? 0 : System.nanoTime();
+		int removed = 0;
+		int n = 0;
+		do {
+			int index = indexOfCleared(ref);
+			if (index >= 0) {
+				removeAt(index, RemovalCause.COLLECTED);
+				removed++;
+			}
+		} while (++n < max && (ref = refQueue.poll()) != null);
+		if (stats != null) {
+			stats.recordExpunge(removed, System.nanoTime() - start);
+		}
+		return removed;
+	}
+
+	static int spread(int hashCode) {
+		int h = hashCode * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	static int capacityFor(int expectedSize) {
+		// 최대 사용률 2/3 을 넘지 않는 2의 거듭제곱
+		long needed = Math.max(2L, (long) expectedSize * 3 / 2 + 1);
+		if (needed >= MAXIMUM_CAPACITY) {
+			return MAXIMUM_CAPACITY;
+		}
+		return Integer.highestOneBit((int) needed - 1) << 1;
+	}
+
+	private void allocate(int capacity) {
+		refs = new Object[capacity];
+		threshold = capacity == MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY - 1 : capacity / 3 * 2;
+		shrinkThreshold = capacity > minimumCapacity ? capacity / 8 : 0;
+		used = size;
+	}
+
+	final int indexOf(Object key) {
+		if (key == null) {
+			return -1;
+		}
+		Object[] tab = refs;
+		int mask = tab.length - 1;
+		int probes = 1;
+		for (int i = spread(hashCodeMapper.applyAsInt(key)) & mask;; i = (i + 1) & mask, probes++) {
+			Object slot = tab[i];
+			if (slot == null) {
+				if (stats != null) {
+					stats.recordLookup(false, probes);
+				}
+				return -1;
+			}
+			if (slot != TOMBSTONE && ((Reference<?>) slot).get() == key) {
+				if (stats != null) {
+					stats.recordLookup(true, probes);
+				}
+				return i;
+			}
+		}
+	}
+
+	// 큐에서 꺼낸 참조가 가리키는 슬롯을 찾는다. 하위 클래스가 값의 참조를 등록했다면 재정의한다.
+	int indexOfCleared(Reference<?> ref) {
+		return indexOfRef(ref);
+	}
+
+	final int indexOfRef(Object ref) {
+		Object[] tab = refs;
+		int mask = tab.length - 1;
+		for (int i = spread(ref.hashCode()) & mask;; i = (i + 1) & mask) {
+			Object slot = tab[i];
+			if (slot == null) {
+				return -1;
+			}
+			if (slot == ref) {
+				return i;
+			}
+		}
+	}
+
+	// 키가 있으면 그 슬롯을, 없으면 새 슬롯을 만들어 -(index + 1) 로 돌려준다.
+	// 새 슬롯의 값은 하위 클래스가 채운다.
+	final int insertKey(K key) {
+		int hashCode = hashOf(key);
+		int index = probe(key, hashCode);
+		return index >= 0 ? index : -(insertAt(-index - 1, key, hashCode) + 1);
+	}
+
+	final int hashOf(Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("Null key");
+		}
+		return hashCodeMapper.applyAsInt(key);
+	}
+
+	// 키가 있으면 그 슬롯을, 없으면 삽입할 슬롯을 -(index + 1) 로 돌려준다. 테이블은 바꾸지 않는다.
+	final int probe(Object key, int hashCode) {
+		Object[] tab = refs;
+		int mask = tab.length - 1;
+		int free = -1;
+		int probes = 1;
+		for (int i = spread(hashCode) & mask;; i = (i + 1) & mask, probes++) {
+			Object slot = tab[i];
+			if (slot == null) {
+				if (stats != null) {
+					stats.recordLookup(false, probes);
+				}
+				return -((free < 0 ? i : free) + 1);
+			}
+			if (slot == TOMBSTONE) {
+				if (free < 0) {
+					free = i;
+				}
+			} else if (((Reference<?>) slot).get() == key) {
+				if (stats != null) {
+					stats.recordLookup(true, probes);
+				}
+				return i;
+			}
+		}
+	}
+
+	// probe 가 돌려준 슬롯에 키를 넣는다. 재해시하면 슬롯이 바뀌므로 실제로 넣은 슬롯을 돌려준다.
+	// probe 이후 테이블이 바뀌지 않았어야 한다.
+	final int insertAt(int free, K key, int hashCode) {
+		if (refs[free] == null && used + 1 > threshold) {
+			rehash();
+			free = freeSlot(hashCode);
+		}
+		if (refs[free] == null) {
+			used++;
+		}
+		refs[free] = keyStrength == ReferenceStrength.SOFT
+				? new IdentitySoftReference<K>(key, hashCode, refQueue)
+				: new IdentityWeakReference<K>(key, hashCode, refQueue);
+		size++;
+		modCount++;
+		return free;
+	}
+
+	private int freeSlot(int hashCode) {
+		Object[] tab = refs;
+		int mask = tab.length - 1;
+		for (int i = spread(hashCode) & mask;; i = (i + 1) & mask) {
+			Object slot = tab[i];
+			if (slot == null || slot == TOMBSTONE) {
+				return i;
+			}
+		}
+	}
+
+	final void removeAt(int index) {
+		removeAt(index, RemovalCause.EXPLICIT);
+	}
+
+	// 제거 알림을 보내는 하위 클래스가 재정의한다.
+	void removeAt(int index, RemovalCause cause) {
+		refs[index] = TOMBSTONE;
+		clearValue(index);
+		size--;
+		modCount++;
+	}
+
+	private void rehash() {
+		// 살아있는 항목이 대부분이면 확장하고, TOMBSTONE 이 대부분이면 같은 크기로 정리만 한다.
+		int capacity = refs.length;
+		if (size + 1 > capacity / 3 && capacity < MAXIMUM_CAPACITY) {
+			capacity <<= 1;
+		}
+		rehash(capacity);
+	}
+
+	// 반복자가 이전 슬롯 배열의 인덱스로 지우지 않도록 modCount 를 올린다.
+	private void rehash(int capacity) {
+		Object[] oldRefs = refs;
+		modCount++;
+		Object oldValues = allocateValues(capacity);
+		allocate(capacity);
+		for (int i = 0; i < oldRefs.length; i++) {
+			Object slot = oldRefs[i];
+			if (slot != null && slot != TOMBSTONE) {
+				int index = freeSlot(slot.hashCode());
+				refs[index] = slot;
+				moveValue(oldValues, i, index);
+			}
+		}
+		afterRehash();
+	}
+
+	// 살아있는 키의 슬롯이면 키를, 아니면 null 을 돌려준다.
+	@SuppressWarnings("unchecked")
+	static <K> K keyAt(Object[] tab, int index) {
+		Object slot = tab[index];
+		return slot == null || slot == TOMBSTONE ? null : ((Reference<K>) slot).get();
+	}
+
+	// 해시 값을 함께 저장해 큐에서 꺼낸 뒤에도 슬롯을 찾을 수 있다.
+	static final class IdentityWeakReference<T> extends WeakReference<T> {
+		public IdentityWeakReference(T o, int hashCode, ReferenceQueue<? super T> q) {
+			super(o, q);
+			this.hashCode = hashCode;
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		private final int hashCode;
+	}
+
+	static final class IdentitySoftReference<T> extends SoftReference<T> {
+		public IdentitySoftReference(T o, int hashCode, ReferenceQueue<? super T> q) {
+			super(o, q);
+			this.hashCode = hashCode;
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		private final int hashCode;
+	}
+}
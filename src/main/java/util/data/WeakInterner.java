@@ -0,0 +1,207 @@
+package util.data;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import util.data.WeakIdentityTable.IdentityWeakReference;
+
+// equals 가 같은 객체들 중 하나를 대표로 돌려주는 약한 참조 interner.
+// 대표는 약한 참조로만 가지므로 아무도 쓰지 않으면 GC 되고 정리된다.
+// ConcurrentWeakIdentityMap 과 같은 WeakSegment 로 나눈 선형 탐사 테이블을 쓰며, 이미 있는 값의 intern 은 락과 할당 없이 끝난다.
+// 슬롯은 WeakIdentityTable 의 IdentityWeakReference 로 spread 한 해시를 함께 저장해 큐에서 꺼낸 뒤에도 슬롯을 찾는다.
+// 값은 intern 된 동안 equals 와 hashCode 가 바뀌지 않아야 한다.
+public class WeakInterner<T> {
+	private static final int DEFAULT_EXPECTED_SIZE = 16;
+	private static final int MAXIMUM_SEGMENTS = 1 << 16;
+	// intern 은 읽기이자 쓰기이므로 매번 큐를 비운다. 큐가 비어 있으면 volatile 읽기 하나로 끝난다.
+	private static final ExpungePolicy DEFAULT_EXPUNGE_POLICY = ExpungePolicy.eager();
+
+	private final Segment[] segments;
+	// 해시의 상위 비트로 세그먼트를, 하위 비트로 세그먼트 안의 슬롯을 고른다.
+	private final int segmentShift;
+	private final int segmentMask;
+	private final ExpungePolicy expungePolicy;
+
+	transient private final ReferenceQueue<T> refQueue = new ReferenceQueue<T>();
+
+	public WeakInterner() {
+		this(DEFAULT_EXPECTED_SIZE);
+	}
+
+	public WeakInterner(int expectedSize) {
+		this(expectedSize, Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	public WeakInterner(int expectedSize, int concurrencyLevel) {
+		this(expectedSize, concurrencyLevel, DEFAULT_EXPUNGE_POLICY);
+	}
+
+	// expungePolicy 의 읽기 정리 여부는 쓰지 않는다. intern 은 항상 쓰기로 본다.
+	public WeakInterner(int expectedSize, int concurrencyLevel, ExpungePolicy expungePolicy) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+		}
+		if (concurrencyLevel <= 0) {
+			throw new IllegalArgumentException("Illegal concurrency level: " + concurrencyLevel);
+		}
+		int segmentCount = 1;
+		int shift = 0;
+		while (segmentCount < concurrencyLevel && segmentCount < MAXIMUM_SEGMENTS) {
+			segmentCount <<= 1;
+			shift++;
+		}
+		this.expungePolicy = Objects.requireNonNull(expungePolicy);
+		segmentShift = 32 - shift;
+		segmentMask = segmentCount - 1;
+		segments = newSegments(segmentCount);
+		int segmentExpectedSize = (expectedSize + segmentCount - 1) / segmentCount;
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(WeakIdentityTable.capacityFor(segmentExpectedSize));
+		}
+	}
+
+	// 제네릭 내부 클래스의 배열은 바로 만들 수 없다.
+	@SuppressWarnings("unchecked")
+	private Segment[] newSegments(int length) {
+		return (Segment[]) new WeakInterner<?>.Segment[length];
+	}
+
+	private Segment segmentFor(int spreadHash) {
+		return segments[(spreadHash >>> segmentShift) & segmentMask];
+	}
+
+	// value 와 같은 대표가 있으면 그것을, 없으면 value 를 대표로 넣고 돌려준다. null 은 넣을 수 없다.
+	public T intern(T value) {
+		int hash = WeakIdentityTable.spread(value.hashCode());
+		expunge(expungePolicy.getMaxPerOperation());
+		Segment segment = segmentFor(hash);
+		T canonical = segment.get(value, hash);
+		return canonical != null ? canonical : segment.intern(value, hash);
+	}
+
+	// 넣지 않고 같은 대표만 찾는다. 없으면 null 이다.
+	public T getIfPresent(Object value) {
+		if (value == null) {
+			return null;
+		}
+		int hash = WeakIdentityTable.spread(value.hashCode());
+		return segmentFor(hash).get(value, hash);
+	}
+
+	// GC 되었지만 아직 정리되지 않은 대표도 포함한다.
+	public int size() {
+		long sum = 0;
+		for (Segment segment : segments) {
+			sum += segment.count;
+		}
+		return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	// GC 된 대표 중 정리되지 않은 것을 모두 정리하고 정리한 수를 돌려준다.
+	// 다른 스레드의 intern 과 동시에 호출해도 안전하므로 유지보수 스레드에서 주기적으로 호출할 수 있다.
+	public int drainCleared() {
+		return expunge(ExpungePolicy.UNBOUNDED);
+	}
+
+	public ExpungePolicy getExpungePolicy() {
+		return expungePolicy;
+	}
+
+	// 락을 잡지 않으므로 동시에 바뀌는 중이면 근사치이다. 대표 객체 자체는 포함하지 않는다.
+	public Footprint footprint() {
+		long entries = 0;
+		long capacity = 0;
+		long slots = 0;
+		for (Segment segment : segments) {
+			int length = segment.table.length();
+			capacity += length;
+			slots += Footprint.arrayBytes(length, 4);
+			entries += segment.count;
+		}
+		Footprint footprint = new Footprint((int) Math.min(entries, Integer.MAX_VALUE), (int) Math.min(capacity, Integer.MAX_VALUE));
+		footprint.add("segments", Footprint.arrayBytes(segments.length, 4) + (long) segments.length * WeakSegment.SEGMENT_BYTES);
+		footprint.add("slots", slots);
+		footprint.add("references", entries * Footprint.WEAK_REFERENCE_BYTES);
+		return footprint;
+	}
+
+	private int expunge(int max) {
+		int removed = 0;
+		for (int n = 0; n < max; n++) {
+			Reference<? extends T> ref = refQueue.poll();
+			if (ref == null) {
+				break;
+			}
+			if (segmentFor(ref.hashCode()).remove(ref)) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	// 값을 equals 로 찾는 세그먼트. 저장한 해시가 다르면 equals 를 부르지 않는다.
+	@SuppressWarnings("serial")
+	final class Segment extends WeakSegment {
+		Segment(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		int hashOf(Reference<?> ref) {
+			return ref.hashCode();
+		}
+
+		@Override
+		boolean matches(Reference<?> ref, Object value, int hash) {
+			if (ref.hashCode() != hash) {
+				return false;
+			}
+			Object canonical = ref.get();
+			return canonical != null && (canonical == value || value.equals(canonical));
+		}
+
+		// 정리할 것이 없으므로 큐에 들어가지 않게 한다. 이미 큐에 들어간 참조는 그대로 둔다.
+		@Override
+		void onRemove(Reference<?> ref) {
+			ref.clear();
+		}
+
+		// 락 없이 찾는다.
+		@SuppressWarnings("unchecked")
+		T get(Object value, int hash) {
+			Reference<?> ref = find(value, hash);
+			return ref == null ? null : (T) ref.get();
+		}
+
+		T intern(T value, int hash) {
+			lock();
+			try {
+				// 락을 기다리는 동안 다른 스레드가 넣었을 수 있다.
+				AtomicReferenceArray<Object> tab = table;
+				int index = indexOf(tab, value, hash);
+				if (index < 0) {
+					insert(tab, -index - 1, new IdentityWeakReference<T>(value, hash, refQueue));
+					return value;
+				}
+				@SuppressWarnings("unchecked")
+				T canonical = ((Reference<T>) tab.get(index)).get();
+				if (canonical == null) {
+					// 찾은 뒤에 GC 되었으면 그 슬롯을 새 대표로 채운다. 이전 참조는 큐에서 꺼내도 찾지 못하고 버려진다.
+					tab.set(index, new IdentityWeakReference<T>(value, hash, refQueue));
+					return value;
+				}
+				return canonical;
+			} finally {
+				unlock();
+			}
+		}
+	}
+}
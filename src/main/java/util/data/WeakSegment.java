@@ -0,0 +1,173 @@
+package util.data;
+
+import java.lang.ref.Reference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// ConcurrentWeakIdentityMap 과 WeakInterner 의 세그먼트. 선형 탐사 테이블 하나와 그 쓰기 락이다.
+// 슬롯은 null, TOMBSTONE, 참조 중 하나이며 쓰기는 락 안에서 volatile 쓰기로 게시한다.
+// 재해시는 새 배열을 만들어 table 을 교체하므로 이전 배열을 읽고 있는 스레드도 일관된 상태를 본다.
+// 참조는 spread 한 해시를 저장하고, 어떤 참조가 찾는 키의 것인지는 하위 클래스의 matches 가 정한다.
+@SuppressWarnings("serial")
+abstract class WeakSegment extends ReentrantLock {
+	// 삭제된 슬롯 표시, 읽는 쪽의 탐색이 끊기지 않도록 null 로 되돌리지 않는다.
+	static final Object TOMBSTONE = new Object();
+	// footprint() 의 객체 크기. 세그먼트와 그 락의 NonfairSync, AtomicReferenceArray 를 합친 크기이다.
+	static final int SEGMENT_BYTES = 88;
+
+	volatile AtomicReferenceArray<Object> table;
+	volatile int count;
+	// count + TOMBSTONE 수, 락 안에서만 접근한다.
+	private int used;
+	private int threshold;
+
+	WeakSegment(int capacity) {
+		setTable(new AtomicReferenceArray<>(capacity));
+	}
+
+	// 참조에 저장한 spread 된 해시
+	abstract int hashOf(Reference<?> ref);
+
+	// ref 가 key 의 항목이면 true 이다. 락 없이도 호출된다.
+	abstract boolean matches(Reference<?> ref, Object key, int hash);
+
+	// 테이블에서 빠진 참조를 정리한다. 락 안에서 호출된다.
+	abstract void onRemove(Reference<?> ref);
+
+	private void setTable(AtomicReferenceArray<Object> tab) {
+		int capacity = tab.length();
+		threshold = capacity == WeakIdentityTable.MAXIMUM_CAPACITY ? WeakIdentityTable.MAXIMUM_CAPACITY - 1 : capacity / 3 * 2;
+		table = tab;
+	}
+
+	// 락 없이 찾는다. 없으면 null 이다.
+	final Reference<?> find(Object key, int hash) {
+		AtomicReferenceArray<Object> tab = table;
+		int mask = tab.length() - 1;
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+			Object slot = tab.get(i);
+			if (slot == null) {
+				return null;
+			}
+			if (slot != TOMBSTONE && matches((Reference<?>) slot, key, hash)) {
+				return (Reference<?>) slot;
+			}
+		}
+	}
+
+	// 락 안에서 호출한다. 없으면 삽입 가능한 슬롯을 -(index + 1) 로 돌려준다.
+	final int indexOf(AtomicReferenceArray<Object> tab, Object key, int hash) {
+		int mask = tab.length() - 1;
+		int free = -1;
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+			Object slot = tab.get(i);
+			if (slot == null) {
+				return -((free < 0 ? i : free) + 1);
+			}
+			if (slot == TOMBSTONE) {
+				if (free < 0) {
+					free = i;
+				}
+			} else if (matches((Reference<?>) slot, key, hash)) {
+				return i;
+			}
+		}
+	}
+
+	// 락 안에서 indexOf 가 돌려준 빈 슬롯에 넣는다.
+	final void insert(AtomicReferenceArray<Object> tab, int index, Reference<?> ref) {
+		if (tab.get(index) == null) {
+			if (used + 1 > threshold) {
+				tab = rehash(tab);
+				index = freeSlot(tab, hashOf(ref));
+			}
+			if (tab.get(index) == null) {
+				used++;
+			}
+		}
+		tab.set(index, ref);
+		count++;
+	}
+
+	// 락 안에서 호출한다.
+	final void removeAt(AtomicReferenceArray<Object> tab, int index) {
+		Reference<?> ref = (Reference<?>) tab.get(index);
+		tab.set(index, TOMBSTONE);
+		onRemove(ref);
+		count--;
+	}
+
+	// 큐에서 꺼낸 참조처럼 참조 자체로 지운다. 이미 지워졌으면 false 이다.
+	final boolean remove(Reference<?> ref) {
+		lock();
+		try {
+			AtomicReferenceArray<Object> tab = table;
+			int mask = tab.length() - 1;
+			for (int i = hashOf(ref) & mask;; i = (i + 1) & mask) {
+				Object slot = tab.get(i);
+				if (slot == null) {
+					return false;
+				}
+				if (slot == ref) {
+					removeAt(tab, i);
+					return true;
+				}
+			}
+		} finally {
+			unlock();
+		}
+	}
+
+	final void clear() {
+		lock();
+		try {
+			AtomicReferenceArray<Object> tab = table;
+			for (int i = 0, n = tab.length(); i < n; i++) {
+				Object slot = tab.get(i);
+				if (slot != null && slot != TOMBSTONE) {
+					onRemove((Reference<?>) slot);
+				}
+			}
+			setTable(new AtomicReferenceArray<>(tab.length()));
+			used = 0;
+			count = 0;
+		} finally {
+			unlock();
+		}
+	}
+
+	private static int freeSlot(AtomicReferenceArray<Object> tab, int hash) {
+		int mask = tab.length() - 1;
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+			Object slot = tab.get(i);
+			if (slot == null || slot == TOMBSTONE) {
+				return i;
+			}
+		}
+	}
+
+	private AtomicReferenceArray<Object> rehash(AtomicReferenceArray<Object> oldTab) {
+		int oldCapacity = oldTab.length();
+		int capacity = oldCapacity;
+		if (count + 1 > capacity / 3 && capacity < WeakIdentityTable.MAXIMUM_CAPACITY) {
+			capacity <<= 1;
+		}
+		AtomicReferenceArray<Object> tab = new AtomicReferenceArray<>(capacity);
+		int mask = capacity - 1;
+		int n = 0;
+		for (int i = 0; i < oldCapacity; i++) {
+			Object slot = oldTab.get(i);
+			if (slot != null && slot != TOMBSTONE) {
+				int j = hashOf((Reference<?>) slot) & mask;
+				while (tab.get(j) != null) {
+					j = (j + 1) & mask;
+				}
+				tab.set(j, slot);
+				n++;
+			}
+		}
+		used = n;
+		setTable(tab);
+		return tab;
+	}
+}
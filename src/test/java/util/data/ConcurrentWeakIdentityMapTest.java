@@ -0,0 +1,304 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class ConcurrentWeakIdentityMapTest {
+	// 해시가 모두 같아도 키는 동일성으로 구분된다.
+	@Test
+	public void testHashFunction() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(i -> new Integer(1)).collect(Collectors.toList());
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>(0, 1, ExpungePolicy.eager(), i -> i);
+		for (int i = 0; i < list.size(); i++) {
+			map.put(list.get(i), i);
+		}
+		assertEquals(list.size(), map.size());
+		for (int i = 0; i < list.size(); i++) {
+			assertEquals(Integer.valueOf(i), map.get(list.get(i)));
+		}
+		assertSame(null, map.get(new Integer(1)));
+	}
+
+	@Test
+	public void testIdentity() {
+		List<Integer> list = new ArrayList<>();
+		list.add(new Integer(1));
+		list.add(new Integer(1));
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>();
+		assertEquals(true, map.isEmpty());
+
+		assertSame(null, map.put(list.get(0), list.get(0)));
+		assertSame(null, map.put(list.get(1), list.get(1)));
+		assertSame(list.get(1), map.put(list.get(1), list.get(0)));
+		assertEquals(2, map.size());
+		assertSame(list.get(0), map.get(list.get(0)));
+		assertSame(list.get(0), map.get(list.get(1)));
+		assertSame(null, map.get(new Integer(1)));
+		assertEquals(false, map.containsKey(new Integer(1)));
+		assertEquals(true, map.containsValue(new Integer(1)));
+
+		assertSame(null, map.remove(new Integer(1)));
+		assertEquals(false, map.remove(list.get(0), new Integer(2)));
+		assertEquals(true, map.remove(list.get(0), new Integer(1)));
+		assertSame(list.get(0), map.remove(list.get(1)));
+		assertEquals(true, map.isEmpty());
+	}
+
+	@Test
+	public void testAtomicOperations() {
+		Integer key = new Integer(1);
+		Integer value = new Integer(10);
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>();
+		assertSame(null, map.putIfAbsent(key, value));
+		assertSame(value, map.putIfAbsent(key, new Integer(20)));
+		assertSame(value, map.computeIfAbsent(key, k -> new Integer(30)));
+
+		assertEquals(false, map.replace(key, new Integer(20), new Integer(40)));
+		assertEquals(true, map.replace(key, new Integer(10), new Integer(40)));
+		assertEquals(Integer.valueOf(40), map.replace(key, new Integer(50)));
+		assertSame(null, map.replace(new Integer(1), new Integer(50)));
+
+		assertEquals(Integer.valueOf(51), map.computeIfPresent(key, (k, v) -> v + 1));
+		assertEquals(Integer.valueOf(52), map.merge(key, 1, Integer::sum));
+		assertSame(null, map.compute(key, (k, v) -> null));
+		assertEquals(false, map.containsKey(key));
+		assertEquals(Integer.valueOf(1), map.merge(key, 1, Integer::sum));
+	}
+
+	// 락은 재진입하므로 함수 안에서 같은 키를 바꿀 수 있다. 결과는 함수가 끝난 뒤의 테이블에 반영된다.
+	@Test
+	public void testComputeModifiesSameKey() {
+		Integer key = new Integer(1);
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>();
+		map.put(key, 1);
+		assertEquals(Integer.valueOf(2), map.compute(key, (k, v) -> {
+			map.remove(k);
+			return v + 1;
+		}));
+		assertEquals(Integer.valueOf(2), map.get(key));
+		assertEquals(1, map.size());
+
+		assertSame(null, map.compute(key, (k, v) -> {
+			map.remove(k);
+			map.put(k, 5);
+			return null;
+		}));
+		assertEquals(false, map.containsKey(key));
+
+		assertEquals(Integer.valueOf(3), map.compute(key, (k, v) -> {
+			map.put(k, 7);
+			return 3;
+		}));
+		assertEquals(Integer.valueOf(3), map.get(key));
+		assertEquals(1, map.size());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testPutNullKey() {
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>();
+		map.put(null, 1);
+	}
+
+	@Test
+	public void testResize() {
+		List<Integer> list = IntStream.range(0, 10000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>(0, 4);
+		list.forEach(i -> map.put(i, i));
+		assertEquals(list.size(), map.size());
+		list.forEach(i -> assertSame(i, map.get(i)));
+
+		for (int i = 0; i < list.size(); i += 2) {
+			assertSame(list.get(i), map.remove(list.get(i)));
+		}
+		assertEquals(list.size() / 2, map.size());
+		assertEquals(list.size() / 2, map.keySet().stream().count());
+	}
+
+	// 반복 중에 다른 스레드가 수정해도 예외 없이 끝나야 한다.
+	@Test
+	public void testWeaklyConsistentIteration() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>();
+		list.forEach(i -> map.put(i, i));
+
+		int count = 0;
+		Iterator<Map.Entry<Integer, Integer>> iterator = map.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, Integer> entry = iterator.next();
+			map.put(new Integer(entry.getKey()), entry.getValue());
+			if (entry.getKey() % 2 == 0) {
+				iterator.remove();
+			}
+			count++;
+		}
+		assertEquals(true, count >= list.size());
+		list.stream().filter(i -> i % 2 == 0).forEach(i -> assertEquals(false, map.containsKey(i)));
+		list.stream().filter(i -> i % 2 == 1).forEach(i -> assertSame(i, map.get(i)));
+	}
+
+	// 여러 스레드가 같은 키에 computeIfAbsent 를 호출해도 함수는 한 번만 실행된다.
+	@Test(timeout = 30000)
+	public void testConcurrentComputeIfAbsent() throws Exception {
+		int threads = 8;
+		List<Integer> keys = IntStream.range(0, 2000).mapToObj(Integer::new).collect(Collectors.toList());
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>(0, 4);
+		AtomicInteger calls = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (Integer key : keys) {
+						assertSame(key, map.computeIfAbsent(key, k -> {
+							calls.incrementAndGet();
+							return k;
+						}));
+						map.get(key);
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+
+		assertEquals(keys.size(), calls.get());
+		assertEquals(keys.size(), map.size());
+	}
+
+	@Test(timeout = 5000)
+	public void testExpunge() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>();
+		list.forEach(i -> map.put(i, 1));
+
+		list.subList(0, 50).clear();
+
+		Integer other = new Integer(-1);
+		while (map.size() > list.size()) {
+			System.gc();
+			Thread.yield();
+			// 쓰기 연산에서 정리된다.
+			map.remove(other);
+		}
+
+		assertEquals(list.size(), map.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(1), map.get(i)));
+	}
+
+	@Test(timeout = 5000)
+	public void testDrainCleared() throws Exception {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>(0, 4, ExpungePolicy.manual());
+		list.forEach(i -> map.put(i, 1));
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+
+		map.put(new Integer(-1), 1);
+		assertEquals(101, map.size());
+
+		// 유지보수 스레드에서 정리한다.
+		Thread maintenance = new Thread(() -> {
+			int drained = 0;
+			while (drained < 50) {
+				drained += map.drainCleared();
+				Thread.yield();
+			}
+		});
+		maintenance.start();
+		maintenance.join();
+
+		assertEquals(list.size() + 1, map.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(1), map.get(i)));
+	}
+
+	// 읽기와 쓰기 스레드가 도는 동안 유지보수 스레드가 GC 된 키를 정리한다.
+	@Test(timeout = 30000)
+	public void testConcurrentDrainCleared() throws Exception {
+		List<Integer> list = IntStream.range(0, 2000).mapToObj(Integer::new).collect(Collectors.toList());
+		List<Integer> extra = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		ConcurrentWeakIdentityMap<Integer,Integer> map = new ConcurrentWeakIdentityMap<>(0, 4, ExpungePolicy.manual());
+		list.forEach(i -> map.put(i, 1));
+
+		List<WeakReference<Integer>> probes = list.subList(0, 1000).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 1000).clear();
+
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> reader = executor.submit(() -> {
+				while (!done.get()) {
+					list.forEach(i -> assertEquals(Integer.valueOf(1), map.get(i)));
+				}
+				return null;
+			});
+			// 넣고 지우기를 반복해 TOMBSTONE 과 재해시가 정리와 겹치게 한다.
+			Future<?> writer = executor.submit(() -> {
+				while (!done.get()) {
+					extra.forEach(i -> map.put(i, 0));
+					list.forEach(i -> map.compute(i, (k, v) -> v));
+					extra.forEach(map::remove);
+				}
+				return null;
+			});
+
+			while (probes.stream().anyMatch(r -> r.get() != null)) {
+				System.gc();
+				Thread.yield();
+			}
+			int drained = 0;
+			while (drained < 1000) {
+				drained += map.drainCleared();
+				Thread.yield();
+			}
+			done.set(true);
+			reader.get();
+			writer.get();
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+
+		assertEquals(list.size(), map.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(1), map.get(i)));
+	}
+}
@@ -0,0 +1,178 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class CopyOnWriteWeakIdentityMapTest {
+	@Test
+	public void testIdentity() {
+		List<Integer> list = new ArrayList<>();
+		list.add(new Integer(1));
+		list.add(new Integer(1));
+
+		CopyOnWriteWeakIdentityMap<Integer,Integer> map = new CopyOnWriteWeakIdentityMap<>();
+		assertEquals(true, map.isEmpty());
+		assertSame(null, map.put(list.get(0), list.get(0)));
+		assertSame(null, map.put(list.get(1), list.get(1)));
+		assertSame(list.get(1), map.put(list.get(1), list.get(0)));
+		assertEquals(2, map.size());
+		assertSame(list.get(0), map.get(list.get(1)));
+		assertSame(null, map.get(new Integer(1)));
+		assertEquals(true, map.containsValue(new Integer(1)));
+
+		assertSame(list.get(0), map.putIfAbsent(list.get(0), list.get(1)));
+		assertEquals(false, map.remove(list.get(0), new Integer(2)));
+		assertEquals(true, map.replace(list.get(0), list.get(0), list.get(1)));
+		assertSame(list.get(1), map.replace(list.get(0), list.get(0)));
+		assertEquals(true, map.remove(list.get(0), new Integer(1)));
+		assertSame(list.get(0), map.remove(list.get(1)));
+		assertEquals(0, map.size());
+	}
+
+	// get 이 null 로 키가 없음을 알리므로 null 값은 넣지 않고 맵도 바꾸지 않는다.
+	@Test
+	public void testNullValues() {
+		Integer key = new Integer(1);
+
+		CopyOnWriteWeakIdentityMap<Integer,Integer> map = new CopyOnWriteWeakIdentityMap<>();
+		try {
+			map.put(key, null);
+			throw new AssertionError();
+		} catch (NullPointerException e) {
+		}
+		try {
+			map.putIfAbsent(key, null);
+			throw new AssertionError();
+		} catch (NullPointerException e) {
+		}
+		assertEquals(false, map.containsKey(key));
+
+		map.put(key, 1);
+		try {
+			map.entrySet().iterator().next().setValue(null);
+			throw new AssertionError();
+		} catch (NullPointerException e) {
+		}
+		assertEquals(Integer.valueOf(1), map.get(key));
+	}
+
+	@Test
+	public void testComputeFamily() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		CopyOnWriteWeakIdentityMap<Integer,Integer> map = new CopyOnWriteWeakIdentityMap<>();
+		list.forEach(i -> map.computeIfAbsent(i, k -> k * 2));
+		assertEquals(list.size(), map.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(i * 2), map.get(i)));
+
+		list.forEach(i -> map.merge(i, 1, Integer::sum));
+		assertEquals(Integer.valueOf(11), map.get(list.get(5)));
+		list.subList(0, 500).forEach(i -> map.computeIfPresent(i, (k, v) -> null));
+		assertEquals(500, map.size());
+		assertSame(null, map.compute(list.get(500), (k, v) -> null));
+		assertEquals(499, map.size());
+
+		Map<Integer,Integer> other = new IdentityHashMap<>();
+		list.forEach(i -> other.put(i, i));
+		map.putAll(other);
+		assertEquals(list.size(), map.size());
+		assertEquals(other, map);
+		assertEquals(map, other);
+	}
+
+	// 반복자는 만들 때의 내용을 돌려주고 순회 중 변경해도 예외가 없다.
+	@Test
+	public void testSnapshotIteration() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		CopyOnWriteWeakIdentityMap<Integer,Integer> map = new CopyOnWriteWeakIdentityMap<>();
+		list.forEach(i -> map.put(i, i));
+		Integer extra = new Integer(-1);
+		int n = 0;
+		for (Iterator<Integer> it = map.keySet().iterator(); it.hasNext();) {
+			Integer key = it.next();
+			map.put(extra, -1);
+			if (key % 2 == 0) {
+				it.remove();
+			}
+			n++;
+		}
+		assertEquals(list.size(), n);
+		assertEquals(51, map.size());
+		map.entrySet().forEach(e -> e.setValue(0));
+		map.values().forEach(v -> assertEquals(Integer.valueOf(0), v));
+	}
+
+	@Test(timeout = 5000)
+	public void testWeakKeys() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		CopyOnWriteWeakIdentityMap<Integer,Integer> map = new CopyOnWriteWeakIdentityMap<>();
+		list.forEach(i -> map.put(i, 1));
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+		while (map.size() > list.size()) {
+			map.drainCleared();
+			Thread.yield();
+		}
+		assertEquals(list.size(), map.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(1), map.get(i)));
+	}
+
+	// 쓰는 동안에도 읽는 스레드는 항상 있는 키를 찾는다.
+	@Test(timeout = 10000)
+	public void testConcurrentReads() throws Exception {
+		List<Integer> fixed = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		CopyOnWriteWeakIdentityMap<Integer,Integer> map = new CopyOnWriteWeakIdentityMap<>();
+		fixed.forEach(i -> map.put(i, i));
+
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Integer> reader = executor.submit(() -> {
+				int misses = 0;
+				while (!done.get()) {
+					for (Integer i : fixed) {
+						if (map.get(i) != i) {
+							misses++;
+						}
+					}
+				}
+				return misses;
+			});
+			for (int n = 0; n < 2000; n++) {
+				Integer key = new Integer(n);
+				map.put(key, n);
+				map.remove(key);
+			}
+			done.set(true);
+			assertEquals(Integer.valueOf(0), reader.get());
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertTrue(map.size() == fixed.size());
+	}
+}
@@ -0,0 +1,124 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import com.sun.management.ThreadMXBean;
+
+public class FootprintTest {
+	private static Object[] keys(int n) {
+		Object[] keys = new Object[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = new Object();
+		}
+		return keys;
+	}
+
+	@Test
+	public void testBreakdown() {
+		Object[] keys = keys(1000);
+		WeakIdentityMap<Object,Object> map = new WeakIdentityMap<>();
+		for (Object key : keys) {
+			map.put(key, Boolean.TRUE);
+		}
+		Footprint footprint = map.footprint();
+		assertEquals(1000, footprint.getEntries());
+		assertEquals(2048, footprint.getCapacity());
+		Map<String, Long> breakdown = footprint.getHeapBreakdown();
+		assertEquals(Arrays.asList("slots", "keyReferences", "values"), new ArrayList<>(breakdown.keySet()));
+		assertEquals(Long.valueOf(16 + 2048 * 4), breakdown.get("slots"));
+		assertEquals(Long.valueOf(1000 * 32), breakdown.get("keyReferences"));
+		assertEquals(breakdown.values().stream().mapToLong(Long::longValue).sum(), footprint.getHeapBytes());
+		assertEquals(0, footprint.getOffHeapBytes());
+		assertEquals(footprint.getHeapBytes(), map.recordStats().getEstimatedRetainedBytes());
+		assertTrue(footprint.getHeapBytesPerEntry() > 32 && footprint.getHeapBytesPerEntry() < 64);
+
+		// 소프트 참조는 timestamp 필드만큼 크다.
+		WeakIdentityMap<Object,Object> soft = new WeakIdentityMap<>(0, ExpungePolicy.eager(), ReferenceStrength.SOFT, ReferenceStrength.SOFT);
+		for (Object key : keys) {
+			soft.put(key, key);
+		}
+		assertEquals(Long.valueOf(1000 * 48), soft.footprint().getHeapBreakdown().get("keyReferences"));
+		assertEquals(Long.valueOf(1000 * 48), soft.footprint().getHeapBreakdown().get("valueReferences"));
+	}
+
+	@Test
+	public void testOffHeap() {
+		Object[] keys = keys(10);
+		WeakIdentityBufferMap<Object> map = new WeakIdentityBufferMap<>(0, 1 << 16);
+		for (Object key : keys) {
+			map.put(key, new byte[5000]);
+		}
+		Footprint footprint = map.footprint();
+		assertEquals(map.offHeapCapacity(), footprint.getOffHeapBytes());
+		assertEquals(Long.valueOf(2 * (1 << 16)), footprint.getOffHeapBreakdown().get("slabs"));
+		assertTrue(footprint.getHeapBytes() < footprint.getOffHeapBytes() / 10);
+	}
+
+	// 추정치가 실제로 할당한 바이트 수와 맞는지 본다. 미리 크기를 잡아 재해시로 버려지는 배열이 없으면 할당한 만큼이 남는다.
+	// 다른 스레드의 영향을 받지 않도록 힙 사용량 대신 이 스레드의 할당량을 잰다. 객체 배치를 가정하므로 압축 OOP 에서만 확인한다.
+	@Test
+	public void testMeasured() throws Exception {
+		HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+		assumeTrue(hotspot != null && Boolean.parseBoolean(hotspot.getVMOption("UseCompressedOops").getValue()));
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		Object[] keys = keys(200_000);
+		assertMeasured(threads, keys, () -> {
+			WeakIdentityMap<Object,Object> map = new WeakIdentityMap<>(keys.length);
+			for (Object key : keys) {
+				map.put(key, Boolean.TRUE);
+			}
+			return map;
+		});
+		assertMeasured(threads, keys, () -> {
+			WeakIdentitySet<Object> set = new WeakIdentitySet<>(keys.length);
+			for (Object key : keys) {
+				set.add(key);
+			}
+			return set;
+		});
+		assertMeasured(threads, keys, () -> {
+			ConcurrentWeakIdentityMap<Object,Object> map = new ConcurrentWeakIdentityMap<>(keys.length);
+			for (Object key : keys) {
+				map.put(key, Boolean.TRUE);
+			}
+			return map;
+		});
+	}
+
+	private static void assertMeasured(ThreadMXBean threads, Object[] keys, Supplier<Object> factory) {
+		// 처음 실행할 때 생기는 클래스 초기화와 JIT 의 할당이 측정에 섞이지 않도록 한 번 버린다.
+		factory.get();
+		// 측정 중에 끼어드는 할당은 더해지기만 하므로 몇 번 재서 가장 작은 값을 쓴다.
+		long threadId = Thread.currentThread().getId();
+		Object map = null;
+		long measured = Long.MAX_VALUE;
+		for (int n = 0; n < 3; n++) {
+			long before = threads.getThreadAllocatedBytes(threadId);
+			Object m = factory.get();
+			long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+			if (allocated < measured) {
+				map = m;
+				measured = allocated;
+			}
+		}
+		Footprint footprint = map instanceof WeakIdentityTable ? ((WeakIdentityTable<?>) map).footprint()
+				: ((ConcurrentWeakIdentityMap<?, ?>) map).footprint();
+		double ratio = (double) footprint.getHeapBytes() / measured;
+		assertTrue(map.getClass().getSimpleName() + " " + footprint + " measured " + measured, ratio > 0.95 && ratio <= 1.0);
+		assertEquals(keys.length, footprint.getEntries());
+	}
+}
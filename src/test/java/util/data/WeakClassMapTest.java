@@ -0,0 +1,131 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class WeakClassMapTest {
+	@Test
+	public void testPutGetRemove() {
+		WeakClassMap<String> map = new WeakClassMap<>();
+		assertEquals(true, map.isEmpty());
+		assertSame(null, map.put(String.class, "string"));
+		assertSame(null, map.put(Integer.class, "integer"));
+		assertEquals("string", map.put(String.class, "String"));
+		assertEquals(2, map.size());
+		assertEquals("String", map.get(String.class));
+		assertSame(null, map.get(Long.class));
+		assertSame(null, map.get("not a class"));
+		assertEquals(false, map.containsKey(Long.class));
+
+		assertEquals("integer", map.putIfAbsent(Integer.class, "x"));
+		assertEquals(false, map.remove(Integer.class, "x"));
+		assertEquals(true, map.replace(Integer.class, "integer", "Integer"));
+		assertEquals("long", map.computeIfAbsent(Long.class, k -> "long"));
+		assertEquals("long!", map.merge(Long.class, "!", String::concat));
+		assertSame(null, map.computeIfPresent(Long.class, (k, v) -> null));
+		assertEquals(2, map.size());
+
+		Map<Class<?>, String> expected = new HashMap<>();
+		expected.put(String.class, "String");
+		expected.put(Integer.class, "Integer");
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		assertEquals(expected.hashCode(), map.hashCode());
+
+		assertEquals("String", map.remove(String.class));
+		assertSame(null, map.remove(String.class));
+		map.clear();
+		assertEquals(0, map.size());
+		assertSame(null, map.get(Integer.class));
+	}
+
+	@Test
+	public void testIterator() {
+		Class<?>[] types = { String.class, Integer.class, Long.class, Double.class, Object.class, Map.class };
+		WeakClassMap<Integer> map = new WeakClassMap<>();
+		for (int i = 0; i < types.length; i++) {
+			map.put(types[i], i);
+		}
+		int n = 0;
+		for (Iterator<Map.Entry<Class<?>, Integer>> it = map.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Class<?>, Integer> e = it.next();
+			assertSame(types[e.getValue()], e.getKey());
+			if (e.getValue() % 2 == 0) {
+				it.remove();
+			} else {
+				e.setValue(e.getValue() * 10);
+			}
+			n++;
+		}
+		assertEquals(types.length, n);
+		assertEquals(3, map.size());
+		assertEquals(Integer.valueOf(10), map.get(Integer.class));
+		map.values().forEach(v -> assertTrue(v % 10 == 0));
+		assertEquals(3, map.keySet().size());
+	}
+
+	// 값이 자기 클래스를 참조해도 클래스로더가 언로드된다.
+	@Test(timeout = 10000)
+	public void testClassUnloading() throws Exception {
+		WeakClassMap<Object> map = new WeakClassMap<>();
+		map.put(String.class, "string");
+		WeakReference<Class<?>> probe = loadAndPut(map);
+		assertEquals(2, map.size());
+
+		while (probe.get() != null) {
+			System.gc();
+			Thread.yield();
+		}
+		while (map.size() > 1) {
+			map.drainCleared();
+			Thread.yield();
+		}
+		assertEquals("string", map.get(String.class));
+	}
+
+	private static WeakReference<Class<?>> loadAndPut(WeakClassMap<Object> map) throws Exception {
+		Class<?> type = new IsolatedClassLoader().loadClass(Probe.class.getName());
+		map.put(type, type.newInstance());
+		assertEquals(type, map.get(type).getClass());
+		return new WeakReference<>(type);
+	}
+
+	public static class Probe {
+	}
+
+	// Probe 를 부모에게 맡기지 않고 직접 정의하는 클래스로더.
+	static final class IsolatedClassLoader extends ClassLoader {
+		IsolatedClassLoader() {
+			super(WeakClassMapTest.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.equals(Probe.class.getName())) {
+				return super.loadClass(name, resolve);
+			}
+			try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buf = new byte[4096];
+				for (int n; (n = in.read(buf)) > 0;) {
+					out.write(buf, 0, n);
+				}
+				byte[] b = out.toByteArray();
+				return defineClass(name, b, 0, b.length);
+			} catch (IOException e) {
+				throw new ClassNotFoundException(name, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package util.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class WeakIdentityBufferMapTest {
+	private static byte[] bytes(int length, int seed) {
+		byte[] b = new byte[length];
+		for (int i = 0; i < length; i++) {
+			b[i] = (byte) (seed + i);
+		}
+		return b;
+	}
+
+	@Test
+	public void testPutAndGet() {
+		Integer a = new Integer(1);
+		Integer b = new Integer(1);
+
+		WeakIdentityBufferMap<Integer> map = new WeakIdentityBufferMap<>();
+		assertEquals(true, map.isEmpty());
+		map.put(a, bytes(100, 1));
+		map.put(b, ByteBuffer.wrap(bytes(3000, 2)));
+		assertEquals(2, map.size());
+		assertEquals(100, map.length(a));
+		assertEquals(-1, map.length(new Integer(1)));
+		assertEquals(null, map.get(new Integer(1)));
+		assertArrayEquals(bytes(100, 1), map.getBytes(a));
+		assertArrayEquals(bytes(3000, 2), map.getBytes(b));
+
+		ByteBuffer view = map.get(b);
+		assertEquals(true, view.isDirect());
+		assertEquals(true, view.isReadOnly());
+		assertEquals(3000, view.remaining());
+		assertEquals((byte) 2, view.get(0));
+		try {
+			view.put(0, (byte) 0);
+			throw new AssertionError();
+		} catch (ReadOnlyBufferException e) {
+		}
+
+		// 같은 크기 등급이면 블록을 그대로 쓰고, 아니면 새 블록으로 옮긴다.
+		long used = map.offHeapUsed();
+		map.put(a, bytes(120, 3));
+		assertEquals(used, map.offHeapUsed());
+		assertArrayEquals(bytes(120, 3), map.getBytes(a));
+		map.put(a, bytes(10, 4), 2, 5);
+		assertArrayEquals(Arrays.copyOfRange(bytes(10, 4), 2, 7), map.getBytes(a));
+		assertTrue(map.offHeapUsed() < used);
+
+		assertEquals(true, map.remove(a));
+		assertEquals(false, map.remove(a));
+		assertEquals(1, map.size());
+		map.clear();
+		assertEquals(0, map.size());
+		assertEquals(0, map.offHeapUsed());
+	}
+
+	@Test
+	public void testBlockReuse() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityBufferMap<Integer> map = new WeakIdentityBufferMap<>(0, 1 << 16);
+		list.forEach(i -> map.put(i, bytes(i % 500, i)));
+		long capacity = map.offHeapCapacity();
+		list.forEach(i -> assertArrayEquals(bytes(i % 500, i), map.getBytes(i)));
+
+		// 지운 블록을 다시 쓰므로 같은 크기의 값을 다시 넣어도 슬랩이 늘지 않는다.
+		list.forEach(map::remove);
+		assertEquals(0, map.offHeapUsed());
+		list.forEach(i -> map.put(i, bytes(i % 500, -i)));
+		assertEquals(capacity, map.offHeapCapacity());
+		list.forEach(i -> assertArrayEquals(bytes(i % 500, -i), map.getBytes(i)));
+
+		int[] n = { 0 };
+		map.forEach((k, v) -> {
+			assertEquals(k % 500, v.remaining());
+			n[0]++;
+		});
+		assertEquals(list.size(), n[0]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLarge() {
+		WeakIdentityBufferMap<Integer> map = new WeakIdentityBufferMap<>(0, 1024);
+		Integer key = new Integer(1);
+		try {
+			map.put(key, new byte[1025]);
+		} finally {
+			assertEquals(false, map.containsKey(key));
+		}
+	}
+
+	// 슬랩을 더 만들 수 없으면 맵과 사용량이 그대로 남는다.
+	@Test
+	public void testArenaFull() {
+		List<Integer> list = IntStream.range(0, 17).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityBufferMap<Integer> map = new WeakIdentityBufferMap<>(0, ExpungePolicy.eager(), ReferenceStrength.WEAK, new BufferArena(1024, 1));
+		list.subList(0, 16).forEach(i -> map.put(i, bytes(64, i)));
+		assertEquals(1024, map.offHeapUsed());
+		try {
+			map.put(list.get(16), bytes(64, 16));
+			throw new AssertionError();
+		} catch (IllegalStateException e) {
+		}
+		try {
+			map.put(list.get(0), bytes(128, 0));
+			throw new AssertionError();
+		} catch (IllegalStateException e) {
+		}
+		assertEquals(16, map.size());
+		assertEquals(1024, map.offHeapUsed());
+		assertEquals(false, map.containsKey(list.get(16)));
+		assertArrayEquals(bytes(64, 0), map.getBytes(list.get(0)));
+
+		// 지운 블록은 다시 쓸 수 있다.
+		map.remove(list.get(0));
+		assertEquals(1024 - 64, map.offHeapUsed());
+		map.put(list.get(16), bytes(64, 16));
+		assertEquals(1024, map.offHeapUsed());
+		assertArrayEquals(bytes(64, 16), map.getBytes(list.get(16)));
+	}
+
+	@Test(timeout = 5000)
+	public void testWeakKeys() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityBufferMap<Integer> map = new WeakIdentityBufferMap<>();
+		list.forEach(i -> map.put(i, bytes(1000, i)));
+		long used = map.offHeapUsed();
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+		while (map.size() > list.size()) {
+			Thread.yield();
+		}
+		// 정리된 키의 블록은 해제된다.
+		assertEquals(used / 2, map.offHeapUsed());
+		list.forEach(i -> assertArrayEquals(bytes(1000, i), map.getBytes(i)));
+	}
+}
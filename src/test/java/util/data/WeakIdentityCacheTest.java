@@ -0,0 +1,297 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class WeakIdentityCacheTest {
+	@Test
+	public void testLruEviction() {
+		List<Integer> list = IntStream.range(0, 4).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(3, EvictionPolicy.LRU);
+		cache.put(list.get(0), 0);
+		cache.put(list.get(1), 1);
+		cache.put(list.get(2), 2);
+		assertEquals(Integer.valueOf(0), cache.get(list.get(0)));
+		assertSame(null, cache.get(new Integer(0)));
+
+		// 가장 오래 접근하지 않은 1 이 제거된다.
+		cache.put(list.get(3), 3);
+		assertEquals(3, cache.size());
+		assertEquals(false, cache.containsKey(list.get(1)));
+		assertEquals(true, cache.containsKey(list.get(0)));
+
+		CacheStats stats = cache.stats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(1, stats.getEvictionCount());
+		assertEquals(0.5, stats.getHitRate(), 0.0);
+	}
+
+	// 재해시 후에도 접근 순서가 유지되어야 한다.
+	@Test
+	public void testLruOrderAfterResize() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(0, ExpungePolicy.eager(), ReferenceStrength.WEAK, ReferenceStrength.STRONG,
+				list.size(), (k, v) -> 1, EvictionPolicy.LRU);
+		list.forEach(i -> cache.put(i, i));
+		for (int i = list.size() - 1; i >= 0; i--) {
+			cache.get(list.get(i));
+		}
+
+		List<Integer> others = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		others.forEach(i -> cache.put(i, i));
+		assertEquals(list.size(), cache.size());
+		list.subList(0, 900).forEach(i -> assertSame(i, cache.get(i)));
+		list.subList(900, 1000).forEach(i -> assertEquals(false, cache.containsKey(i)));
+	}
+
+	// 한 번씩만 접근하는 키가 많이 들어와도 자주 쓰는 키는 남아 있어야 한다.
+	@Test
+	public void testTinyLfuScanResistance() {
+		List<Integer> hot = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		List<Integer> scan = IntStream.range(0, 10000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(200);
+		for (int n = 0; n < 5; n++) {
+			hot.forEach(i -> {
+				if (cache.get(i) == null) {
+					cache.put(i, i);
+				}
+			});
+		}
+		scan.forEach(i -> cache.put(i, i));
+
+		// protected 로 올라간 키는 남고, 창에 있던 몇 개만 빈도가 줄어 밀려날 수 있다.
+		assertEquals(200, cache.size());
+		assertTrue(hot.stream().filter(cache::containsKey).count() >= 90);
+		assertEquals(scan.size() + hot.size() - 200, cache.stats().getEvictionCount());
+
+		// 같은 조건에서 LRU 는 모두 밀려난다.
+		WeakIdentityCache<Integer,Integer> lru = new WeakIdentityCache<>(200, EvictionPolicy.LRU);
+		for (int n = 0; n < 5; n++) {
+			hot.forEach(i -> lru.put(i, i));
+		}
+		scan.forEach(i -> lru.put(i, i));
+		assertEquals(0, hot.stream().filter(lru::containsKey).count());
+	}
+
+	@Test
+	public void testEvictionRemovalCause() {
+		List<Integer> list = IntStream.range(0, 4).mapToObj(Integer::new).collect(Collectors.toList());
+		List<RemovalCause> causes = new ArrayList<>();
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(3, EvictionPolicy.LRU);
+		cache.setRemovalListener((k, v, cause) -> {
+			assertSame(list.get(0), k);
+			causes.add(cause);
+		});
+		list.forEach(i -> cache.put(i, i));
+		cache.size();
+		assertEquals(Arrays.asList(RemovalCause.SIZE), causes);
+	}
+
+	@Test
+	public void testWeightedEviction() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(100, (k, v) -> v, EvictionPolicy.LRU);
+		list.forEach(i -> cache.put(i, i % 10));
+		assertTrue(cache.weightedSize() <= 100);
+		assertEquals(list.stream().skip(list.size() - cache.size()).mapToInt(i -> i % 10).sum(), cache.weightedSize());
+
+		// 값이 바뀌면 가중치도 다시 계산한다.
+		Integer last = list.get(list.size() - 1);
+		cache.put(last, 100);
+		assertEquals(1, cache.size());
+		assertEquals(100, cache.weightedSize());
+
+		cache.clear();
+		assertEquals(0, cache.weightedSize());
+	}
+
+	@Test
+	public void testSketchGrowsWithEntries() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		// 최대 크기가 커도 스케치는 항목 수만큼만 차지한다.
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(1 << 30);
+		assertEquals(Long.valueOf(Footprint.arrayBytes(16, 8)), cache.footprint().getHeapBreakdown().get("frequencySketch"));
+		list.forEach(i -> cache.put(i, i));
+		assertEquals(Long.valueOf(Footprint.arrayBytes(1024, 8)), cache.footprint().getHeapBreakdown().get("frequencySketch"));
+
+		// 가중치로 제한하면 가중치 합이 아니라 항목 수를 따른다.
+		WeakIdentityCache<Integer,Integer> weighted = new WeakIdentityCache<>(1 << 30, (k, v) -> 1 << 20, EvictionPolicy.TINY_LFU);
+		list.forEach(i -> weighted.put(i, i));
+		assertEquals(Long.valueOf(Footprint.arrayBytes(1024, 8)), weighted.footprint().getHeapBreakdown().get("frequencySketch"));
+
+		// 키운 뒤에도 빈도에 따라 진입을 판단한다.
+		WeakIdentityCache<Integer,Integer> small = new WeakIdentityCache<>(100);
+		Integer hot = list.get(0);
+		small.put(hot, 0);
+		for (int n = 0; n < 10; n++) {
+			small.get(hot);
+		}
+		list.subList(1, list.size()).forEach(i -> small.put(i, i));
+		assertEquals(true, small.containsKey(hot));
+	}
+
+	// 최대 크기가 없으면 스케치를 만들지 않고 만료로만 제거한다.
+	@Test
+	public void testUnboundedExpireOnly() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		long[] time = { 0 };
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(Long.MAX_VALUE);
+		cache.setTicker(() -> time[0]);
+		cache.setExpireAfterWrite(10, TimeUnit.NANOSECONDS);
+		list.forEach(i -> cache.put(i, i));
+		list.forEach(cache::get);
+		assertEquals(null, cache.footprint().getHeapBreakdown().get("frequencySketch"));
+		assertEquals(list.size(), cache.size());
+		assertEquals(0, cache.stats().getEvictionCount());
+
+		time[0] = 10;
+		assertEquals(true, cache.isEmpty());
+		assertEquals(0, cache.weightedSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeWeight() {
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(100, (k, v) -> v, EvictionPolicy.LRU);
+		try {
+			cache.put(new Integer(1), -1);
+		} finally {
+			assertEquals(0, cache.size());
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testWeakKeys() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(1000);
+		list.forEach(i -> cache.put(i, 1));
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+		while (cache.size() > list.size()) {
+			Thread.yield();
+		}
+
+		assertEquals(list.size(), cache.weightedSize());
+		assertEquals(0, cache.stats().getEvictionCount());
+		list.forEach(i -> assertEquals(Integer.valueOf(1), cache.get(i)));
+	}
+
+	@Test
+	public void testExpireAfterWrite() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		List<RemovalCause> causes = new ArrayList<>();
+		long[] time = { 0 };
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(Long.MAX_VALUE, EvictionPolicy.LRU);
+		cache.setTicker(() -> time[0]);
+		cache.setExpireAfterWrite(10, TimeUnit.NANOSECONDS);
+		cache.setRemovalListener((k, v, cause) -> causes.add(cause));
+		assertEquals(10, cache.getExpireAfterWrite(TimeUnit.NANOSECONDS));
+		assertEquals(-1, cache.getExpireAfterAccess(TimeUnit.NANOSECONDS));
+
+		// 재해시가 일어나도 쓴 순서가 유지된다.
+		for (int i = 0; i < list.size(); i++) {
+			time[0] = i / 10;
+			cache.put(list.get(i), i);
+		}
+		time[0] = 14;
+		assertEquals(50, cache.size());
+		assertEquals(null, cache.get(list.get(49)));
+		assertEquals(Integer.valueOf(50), cache.get(list.get(50)));
+
+		// 읽기는 만료를 늦추지 않고 쓰기는 늦춘다.
+		cache.put(list.get(50), 0);
+		time[0] = 20;
+		assertEquals(1, cache.size());
+		assertEquals(Integer.valueOf(0), cache.get(list.get(50)));
+		time[0] = 24;
+		assertEquals(true, cache.isEmpty());
+		assertEquals(100, causes.stream().filter(c -> c == RemovalCause.EXPIRED).count());
+	}
+
+	// 함수 안에서 만료 시각이 지나도 읽기만 하면 예외 없이 끝나고, 만료는 다음 연산에서 처리한다.
+	@Test
+	public void testComputeReadsAfterExpiry() {
+		List<Integer> list = IntStream.range(0, 10).mapToObj(Integer::new).collect(Collectors.toList());
+		long[] time = { 0 };
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(100);
+		cache.setTicker(() -> time[0]);
+		cache.setExpireAfterWrite(10, TimeUnit.NANOSECONDS);
+		list.forEach(i -> cache.put(i, i));
+		time[0] = 5;
+		Integer key = new Integer(-1);
+		cache.put(key, 0);
+
+		assertEquals(Integer.valueOf(1), cache.compute(key, (k, v) -> {
+			time[0] = 10;
+			return cache.get(k) + 1;
+		}));
+		assertEquals(1, cache.size());
+		assertEquals(Integer.valueOf(1), cache.get(key));
+	}
+
+	@Test
+	public void testExpireAfterAccess() {
+		List<Integer> list = IntStream.range(0, 10).mapToObj(Integer::new).collect(Collectors.toList());
+		long[] time = { 0 };
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(100);
+		cache.setTicker(() -> time[0]);
+		list.forEach(i -> cache.put(i, i));
+		// 이미 있는 항목은 설정한 시각에 접근한 것으로 본다.
+		cache.setExpireAfterAccess(5, TimeUnit.NANOSECONDS);
+		for (time[0] = 1; time[0] < 20; time[0]++) {
+			cache.get(list.get(0));
+		}
+		assertEquals(1, cache.size());
+		assertEquals(Integer.valueOf(0), cache.get(list.get(0)));
+		time[0] += 5;
+		assertEquals(null, cache.get(list.get(0)));
+		assertEquals(0, cache.weightedSize());
+	}
+
+	@Test
+	public void testExpireAfterWriteAndAccess() {
+		Integer a = new Integer(1);
+		Integer b = new Integer(2);
+		long[] time = { 0 };
+
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(100);
+		cache.setTicker(() -> time[0]);
+		cache.setExpireAfterWrite(10, TimeUnit.NANOSECONDS);
+		cache.setExpireAfterAccess(3, TimeUnit.NANOSECONDS);
+		cache.put(a, 1);
+		cache.put(b, 2);
+		for (time[0] = 1; time[0] < 9; time[0]++) {
+			assertEquals(Integer.valueOf(1), cache.get(a));
+		}
+		assertEquals(false, cache.containsKey(b));
+		time[0] = 10;
+		assertEquals(false, cache.containsKey(a));
+	}
+}
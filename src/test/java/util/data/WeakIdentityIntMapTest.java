@@ -0,0 +1,52 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.ToIntFunction;
+
+import org.apache.commons.lang3.mutable.MutableLong;
+
+public class WeakIdentityIntMapTest extends WeakIdentityPrimitiveMapTest<WeakIdentityIntMap<Integer>> {
+	@Override
+	WeakIdentityIntMap<Integer> create() {
+		return new WeakIdentityIntMap<>();
+	}
+
+	@Override
+	WeakIdentityIntMap<Integer> create(ToIntFunction<Integer> hashFunction) {
+		return new WeakIdentityIntMap<>(hashFunction);
+	}
+
+	@Override
+	long put(WeakIdentityIntMap<Integer> map, Integer key, long value) {
+		return map.putInt(key, (int) value);
+	}
+
+	@Override
+	long get(WeakIdentityIntMap<Integer> map, Object key) {
+		return map.getInt(key);
+	}
+
+	@Override
+	long getOrDefault(WeakIdentityIntMap<Integer> map, Object key, long defaultValue) {
+		return map.getOrDefault(key, (int) defaultValue);
+	}
+
+	@Override
+	long addAndGet(WeakIdentityIntMap<Integer> map, Integer key, long delta) {
+		return map.addAndGet(key, (int) delta);
+	}
+
+	@Override
+	long remove(WeakIdentityIntMap<Integer> map, Object key) {
+		return map.removeInt(key);
+	}
+
+	@Override
+	void forEach(WeakIdentityIntMap<Integer> map, MutableLong sum) {
+		map.forEach((k, v) -> {
+			assertEquals(k * 3, v);
+			sum.add(v);
+		});
+	}
+}
@@ -0,0 +1,168 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WeakIdentityLoadingCacheTest {
+	// 여러 스레드가 같은 키를 동시에 요청해도 로드는 한 번만 실행된다.
+	@Test(timeout = 10000)
+	public void testSingleFlight() throws Exception {
+		int threads = 8;
+		Integer key = new Integer(1);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		WeakIdentityLoadingCache<Integer,String> cache = new WeakIdentityLoadingCache<>(k -> {
+			calls.incrementAndGet();
+			loading.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return "value" + k;
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			futures.add(executor.submit(() -> cache.get(key)));
+			loading.await();
+			for (int t = 1; t < threads; t++) {
+				futures.add(executor.submit(() -> cache.get(key)));
+			}
+			// 나머지 스레드가 로드를 기다리기 시작할 시간을 준다.
+			Thread.sleep(100);
+			assertSame(null, cache.getIfPresent(key));
+			release.countDown();
+			for (Future<String> future : futures) {
+				assertEquals("value1", future.get());
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+
+		assertEquals(1, calls.get());
+		assertEquals("value1", cache.getIfPresent(key));
+		CacheStats stats = cache.stats();
+		assertEquals(1, stats.getLoadSuccessCount());
+		assertEquals(0, stats.getLoadFailureCount());
+		assertEquals(2, stats.getMissCount());
+		assertEquals(threads, stats.getHitCount());
+		assertTrue(stats.getAverageLoadPenalty() > 0);
+	}
+
+	// 실패한 로드는 저장하지 않고 다음 요청에서 다시 로드한다.
+	@Test
+	public void testLoadFailure() {
+		Integer key = new Integer(1);
+		AtomicInteger calls = new AtomicInteger();
+		WeakIdentityLoadingCache<Integer,Integer> cache = new WeakIdentityLoadingCache<>(k -> {
+			if (calls.incrementAndGet() == 1) {
+				throw new IllegalArgumentException("first");
+			}
+			return calls.get() == 2 ? null : k;
+		});
+
+		try {
+			cache.get(key);
+			throw new AssertionError();
+		} catch (IllegalArgumentException e) {
+			assertEquals("first", e.getMessage());
+		}
+		assertEquals(0, cache.size());
+		assertSame(null, cache.get(key));
+		assertEquals(0, cache.size());
+		assertSame(key, cache.get(key));
+		assertSame(key, cache.get(key));
+		assertEquals(3, calls.get());
+
+		CacheStats stats = cache.stats();
+		assertEquals(1, stats.getLoadSuccessCount());
+		assertEquals(2, stats.getLoadFailureCount());
+		assertEquals(3, stats.getMissCount());
+		assertEquals(1, stats.getHitCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testAsync() throws Exception {
+		Integer key = new Integer(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Thread caller = Thread.currentThread();
+			WeakIdentityLoadingCache<Integer,Thread> cache = new WeakIdentityLoadingCache<>(k -> Thread.currentThread(), executor);
+			CompletableFuture<Thread> future = cache.getAsync(key);
+			Thread loader = future.get();
+			assertTrue(loader != caller);
+			assertSame(loader, cache.get(key));
+
+			// 받은 future 를 바꿔도 캐시에는 영향이 없다.
+			cache.getAsync(key).obtrudeValue(caller);
+			assertSame(loader, cache.get(key));
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRecursiveLoad() {
+		Integer key = new Integer(1);
+		List<WeakIdentityLoadingCache<Integer,Integer>> self = new ArrayList<>();
+		WeakIdentityLoadingCache<Integer,Integer> cache = new WeakIdentityLoadingCache<>(k -> self.get(0).get(k));
+		self.add(cache);
+		cache.get(key);
+	}
+
+	@Test
+	public void testPutAndInvalidate() {
+		Integer key = new Integer(1);
+		WeakIdentityLoadingCache<Integer,Integer> cache = new WeakIdentityLoadingCache<>(k -> 1);
+		cache.put(key, 2);
+		assertEquals(Integer.valueOf(2), cache.get(key));
+		cache.invalidate(key);
+		assertSame(null, cache.getIfPresent(key));
+		assertEquals(Integer.valueOf(1), cache.get(key));
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+
+	@Test(timeout = 5000)
+	public void testWeakKeys() {
+		List<Integer> list = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			list.add(new Integer(i));
+		}
+		WeakIdentityLoadingCache<Integer,Integer> cache = new WeakIdentityLoadingCache<>(k -> 1);
+		list.forEach(cache::get);
+
+		List<WeakReference<Integer>> probes = new ArrayList<>();
+		list.subList(0, 50).forEach(i -> probes.add(new WeakReference<>(i)));
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+		int drained = 0;
+		while (drained < 50) {
+			drained += cache.drainCleared();
+			Thread.yield();
+		}
+		assertEquals(list.size(), cache.size());
+	}
+}
@@ -0,0 +1,52 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.ToIntFunction;
+
+import org.apache.commons.lang3.mutable.MutableLong;
+
+public class WeakIdentityLongMapTest extends WeakIdentityPrimitiveMapTest<WeakIdentityLongMap<Integer>> {
+	@Override
+	WeakIdentityLongMap<Integer> create() {
+		return new WeakIdentityLongMap<>();
+	}
+
+	@Override
+	WeakIdentityLongMap<Integer> create(ToIntFunction<Integer> hashFunction) {
+		return new WeakIdentityLongMap<>(hashFunction);
+	}
+
+	@Override
+	long put(WeakIdentityLongMap<Integer> map, Integer key, long value) {
+		return map.putLong(key, value);
+	}
+
+	@Override
+	long get(WeakIdentityLongMap<Integer> map, Object key) {
+		return map.getLong(key);
+	}
+
+	@Override
+	long getOrDefault(WeakIdentityLongMap<Integer> map, Object key, long defaultValue) {
+		return map.getOrDefault(key, defaultValue);
+	}
+
+	@Override
+	long addAndGet(WeakIdentityLongMap<Integer> map, Integer key, long delta) {
+		return map.addAndGet(key, delta);
+	}
+
+	@Override
+	long remove(WeakIdentityLongMap<Integer> map, Object key) {
+		return map.removeLong(key);
+	}
+
+	@Override
+	void forEach(WeakIdentityLongMap<Integer> map, MutableLong sum) {
+		map.forEach((k, v) -> {
+			assertEquals(k * 3L, v);
+			sum.add(v);
+		});
+	}
+}
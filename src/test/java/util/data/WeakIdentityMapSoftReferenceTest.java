@@ -0,0 +1,35 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+// -XX:SoftRefLRUPolicyMSPerMB=0 으로 실행해야 한다(pom.xml 의 soft-reference-test).
+// 이 설정에서는 마지막 GC 이후 읽지 않은 SOFT 참조가 다음 GC 에서 수거되므로 힙을 소진하지 않고 수거를 확인할 수 있다.
+public class WeakIdentityMapSoftReferenceTest {
+	@Test(timeout = 10000)
+	public void testSoftReferencesCleared() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityMap<Object,Object> softKeys = new WeakIdentityMap<>(16, ExpungePolicy.eager(), ReferenceStrength.SOFT, ReferenceStrength.STRONG);
+		WeakIdentityMap<Object,Object> softValues = new WeakIdentityMap<>(16, ExpungePolicy.eager(), ReferenceStrength.WEAK, ReferenceStrength.SOFT);
+		for (Integer i : list) {
+			softKeys.put(new Object(), i);
+			softValues.put(i, new Object());
+		}
+		assertEquals(list.size(), softKeys.size());
+		assertEquals(list.size(), softValues.size());
+
+		// 수거된 참조가 큐에 들어가기까지 기다린다.
+		while (softKeys.size() > 0 || softValues.size() > 0) {
+			System.gc();
+			Thread.yield();
+		}
+		assertEquals(0, softKeys.size());
+		assertEquals(0, softValues.size());
+	}
+}
@@ -3,10 +3,17 @@ package util.data;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
-import java.lang.reflect.Field;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -14,12 +21,22 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Spliterator;
-import java.util.function.Function;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.StreamSupport;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.commons.lang3.mutable.MutableInt;
+import org.junit.Assume;
 import org.junit.Test;
 
 import lombok.AllArgsConstructor;
@@ -41,30 +58,12 @@ public class WeakIdentityMapTest {
 		assertSame(1, weakIdentityMap.size());
 	}
 	
-	private <K, V> WeakIdentityMap<K, V> createForSameHashCodeTest() throws Exception {
-		WeakIdentityMap<K, V> weakIdentityMap = new WeakIdentityMap<>();
-		Field field = WeakIdentityMap.class.getDeclaredField("hashCodeMapper");
-		boolean accessible = field.isAccessible();
-		try {
-			field.setAccessible(true);
-			field.set(weakIdentityMap, (Function<Integer, Integer>)(i -> i));
-		} finally {
-			field.setAccessible(accessible);
-		}
-		return weakIdentityMap;
+	private WeakIdentityMap<Integer, Integer> createForSameHashCodeTest() {
+		return new WeakIdentityMap<>((ToIntFunction<Integer>) i -> i);
 	}
 	
-	private <K, V> WeakIdentityMap<K, V> createForAllSameHashCodeTest() throws Exception {
-		WeakIdentityMap<K, V> weakIdentityMap = new WeakIdentityMap<>();
-		Field field = WeakIdentityMap.class.getDeclaredField("hashCodeMapper");
-		boolean accessible = field.isAccessible();
-		try {
-			field.setAccessible(true);
-			field.set(weakIdentityMap, (Function<Integer, Integer>)(i -> 1));
-		} finally {
-			field.setAccessible(accessible);
-		}
-		return weakIdentityMap;
+	private WeakIdentityMap<Integer, Integer> createForAllSameHashCodeTest() {
+		return new WeakIdentityMap<>((ToIntFunction<Integer>) i -> 1);
 	}
 	
 	@Test
@@ -651,6 +650,579 @@ public class WeakIdentityMapTest {
 		assertEquals(list.size(), weakIdentityMap.size());
 	}
 	
+	@Test
+	public void testResizeAndTombstone() throws Exception {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = createForAllSameHashCodeTest();
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		assertEquals(list.size(), weakIdentityMap.size());
+		
+		// 삭제 후 재삽입 시 TOMBSTONE 슬롯을 재사용해도 탐색이 끊기지 않아야 한다.
+		for (int i = 0; i < list.size(); i += 2) {
+			assertSame(list.get(i), weakIdentityMap.remove(list.get(i)));
+		}
+		assertEquals(list.size() / 2, weakIdentityMap.size());
+		for (int i = 1; i < list.size(); i += 2) {
+			assertSame(list.get(i), weakIdentityMap.get(list.get(i)));
+		}
+		for (int i = 0; i < list.size(); i += 2) {
+			assertSame(null, weakIdentityMap.put(list.get(i), list.get(i)));
+		}
+		assertEquals(list.size(), weakIdentityMap.size());
+		list.forEach(i -> assertSame(i, weakIdentityMap.get(i)));
+	}
+	
+	@Test
+	public void testEntrySetValue() {
+		List<Integer> list = new ArrayList<>();
+		list.add(new Integer(1));
+		list.add(new Integer(2));
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		
+		Integer value = new Integer(3);
+		for (Entry<Integer, Integer> entry : weakIdentityMap.entrySet()) {
+			assertSame(entry.getKey(), entry.setValue(value));
+		}
+		list.forEach(i -> assertSame(value, weakIdentityMap.get(i)));
+		assertEquals(weakIdentityMap.hashCode(), weakIdentityMap.hashCode());
+	}
+	
+	private com.sun.management.ThreadMXBean allocationMXBean() {
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+		Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+		allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+		return allocationMXBean;
+	}
+	
+	// get, containsKey, 기존 키에 대한 put, remove 는 할당이 없어야 하고 새 키의 put 은 참조 객체 하나만 할당해야 한다.
+	@Test
+	public void testHotPathAllocation() {
+		com.sun.management.ThreadMXBean allocationMXBean = allocationMXBean();
+		long threadId = Thread.currentThread().getId();
+		
+		int n = 1000;
+		Object[] keys = new Object[n];
+		Object[] missingKeys = new Object[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = new Object();
+			missingKeys[i] = new Object();
+		}
+		Object value = new Object();
+		
+		WeakIdentityMap<Object, Object> weakIdentityMap = new WeakIdentityMap<>(n);
+		for (int i = 0; i < n; i++) {
+			weakIdentityMap.put(keys[i], value);
+		}
+		
+		int found = 0;
+		long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+		for (int round = 0; round < 100; round++) {
+			for (int i = 0; i < n; i++) {
+				if (weakIdentityMap.get(keys[i]) == value) {
+					found++;
+				}
+				if (weakIdentityMap.get(missingKeys[i]) == null) {
+					found++;
+				}
+				if (weakIdentityMap.containsKey(keys[i])) {
+					found++;
+				}
+				weakIdentityMap.put(keys[i], value);
+			}
+		}
+		long hitAllocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before;
+		assertEquals(100 * n * 3, found);
+		// 측정 호출 자체의 할당만 허용한다.
+		assertTrue("allocated " + hitAllocated + " bytes", hitAllocated < 1024);
+		
+		before = allocationMXBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < n; i++) {
+			weakIdentityMap.remove(keys[i]);
+		}
+		long removeAllocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before;
+		assertTrue("allocated " + removeAllocated + " bytes", removeAllocated < 1024);
+		
+		WeakIdentityMap<Object, Object> presized = new WeakIdentityMap<>(n);
+		before = allocationMXBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < n; i++) {
+			presized.put(keys[i], value);
+		}
+		long insertAllocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before;
+		assertTrue("allocated " + insertAllocated + " bytes", insertAllocated < n * 48L + 1024);
+	}
+	
+	// 키가 모두 GC 될 때까지 기다린다. 참조 큐에 들어가는 시점은 조금 늦을 수 있다.
+	private void awaitCollected(List<WeakReference<Integer>> probes) {
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+	}
+	
+	@Test(timeout = 5000)
+	public void testManualExpungePolicy() throws Exception {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>(ExpungePolicy.manual());
+		list.forEach(i -> weakIdentityMap.put(i, 1));
+		
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		awaitCollected(probes);
+		Thread.sleep(100);
+		
+		// 자동 정리가 없으므로 GC 된 키도 남아 있다.
+		Integer other = new Integer(-1);
+		weakIdentityMap.put(other, other);
+		weakIdentityMap.remove(other);
+		assertEquals(100, weakIdentityMap.size());
+		
+		int drained = 0;
+		while (drained < 50) {
+			drained += weakIdentityMap.drainCleared();
+			Thread.yield();
+		}
+		assertEquals(50, drained);
+		assertEquals(list.size(), weakIdentityMap.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(1), weakIdentityMap.get(i)));
+	}
+	
+	@Test(timeout = 5000)
+	public void testEqualsIgnoresClearedKeys() throws Exception {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>(ExpungePolicy.manual());
+		// 값이 키를 붙잡지 않도록 캐시된 Integer 를 값으로 쓴다.
+		list.forEach(i -> weakIdentityMap.put(i, i.intValue()));
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		awaitCollected(probes);
+
+		// GC 된 키가 정리되지 않아 size 는 100 이지만 살아있는 내용은 같다.
+		assertEquals(100, weakIdentityMap.size());
+		Map<Integer,Integer> live = new IdentityHashMap<>();
+		list.forEach(i -> live.put(i, i.intValue()));
+		WeakIdentityMap<Integer,Integer> other = new WeakIdentityMap<>();
+		other.putAll(live);
+		assertEquals(weakIdentityMap, live);
+		assertEquals(weakIdentityMap, other);
+		assertEquals(other, weakIdentityMap);
+		assertEquals(other.hashCode(), weakIdentityMap.hashCode());
+
+		other.remove(list.get(0));
+		assertNotEquals(weakIdentityMap, other);
+		assertNotEquals(other, weakIdentityMap);
+	}
+
+	@Test(timeout = 5000)
+	public void testBoundedExpungePolicy() throws Exception {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>(ExpungePolicy.bounded(1, false));
+		list.forEach(i -> weakIdentityMap.put(i, 1));
+		
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		awaitCollected(probes);
+		
+		// 읽기 연산은 정리하지 않는다.
+		for (int i = 0; i < 100; i++) {
+			weakIdentityMap.get(list.get(0));
+			weakIdentityMap.containsKey(list.get(0));
+		}
+		assertEquals(100, weakIdentityMap.size());
+		
+		// 쓰기 연산마다 최대 하나씩 정리한다.
+		Integer other = new Integer(-1);
+		while (weakIdentityMap.size() > list.size()) {
+			int before = weakIdentityMap.size();
+			weakIdentityMap.put(other, other);
+			weakIdentityMap.remove(other);
+			assertTrue(before - weakIdentityMap.size() <= 2);
+			Thread.yield();
+		}
+		assertEquals(list.size(), weakIdentityMap.size());
+	}
+	
+	@Test(timeout = 5000)
+	public void testWeakValues() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		List<Object> values = new ArrayList<>();
+		
+		WeakIdentityMap<Integer,Object> weakIdentityMap = new WeakIdentityMap<>(16, ExpungePolicy.eager(), ReferenceStrength.WEAK, ReferenceStrength.WEAK);
+		list.forEach(i -> {
+			Object value = new Object();
+			if (i % 2 == 0) {
+				values.add(value);
+			}
+			weakIdentityMap.put(i, value);
+		});
+		
+		// 키가 살아 있어도 값이 수거되면 항목이 정리된다.
+		while (weakIdentityMap.size() > values.size()) {
+			System.gc();
+			Thread.yield();
+		}
+		
+		assertEquals(values.size(), weakIdentityMap.size());
+		list.stream().filter(i -> i % 2 == 0).forEach(i -> assertSame(values.get(i / 2), weakIdentityMap.get(i)));
+		list.stream().filter(i -> i % 2 == 1).forEach(i -> assertEquals(false, weakIdentityMap.containsKey(i)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testStrongKeyStrength() {
+		new WeakIdentityMap<Integer, Integer>(16, ExpungePolicy.eager(), ReferenceStrength.STRONG, ReferenceStrength.STRONG);
+	}
+	
+	// SOFT 참조는 GC 가 일어나도 힙이 충분하면 유지된다.
+	@Test(timeout = 5000)
+	public void testSoftReferences() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Object,Object> softKeys = new WeakIdentityMap<>(16, ExpungePolicy.eager(), ReferenceStrength.SOFT, ReferenceStrength.STRONG);
+		WeakIdentityMap<Object,Object> softValues = new WeakIdentityMap<>(16, ExpungePolicy.eager(), ReferenceStrength.WEAK, ReferenceStrength.SOFT);
+		WeakIdentityMap<Object,Object> weakKeys = new WeakIdentityMap<>(16, ExpungePolicy.eager(), ReferenceStrength.WEAK, ReferenceStrength.STRONG);
+		for (Integer i : list) {
+			softKeys.put(new Object(), i);
+			softValues.put(i, new Object());
+			weakKeys.put(new Object(), i);
+		}
+		
+		while (weakKeys.size() > 0) {
+			System.gc();
+			Thread.yield();
+		}
+		assertEquals(list.size(), softKeys.size());
+		assertEquals(list.size(), softValues.size());
+		list.forEach(i -> assertTrue(softValues.get(i) != null));
+		// 메모리가 부족할 때 수거되는지는 WeakIdentityMapSoftReferenceTest 에서 별도 JVM 으로 확인한다.
+	}
+	
+	@Test
+	public void testComputeFamily() {
+		Integer key = new Integer(1);
+		Integer other = new Integer(1);
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		assertEquals(Integer.valueOf(-1), weakIdentityMap.getOrDefault(key, -1));
+		assertSame(null, weakIdentityMap.putIfAbsent(key, 10));
+		assertEquals(Integer.valueOf(10), weakIdentityMap.putIfAbsent(key, 20));
+		assertEquals(Integer.valueOf(10), weakIdentityMap.computeIfAbsent(key, k -> 30));
+		assertSame(null, weakIdentityMap.computeIfAbsent(other, k -> null));
+		assertEquals(false, weakIdentityMap.containsKey(other));
+		assertEquals(Integer.valueOf(30), weakIdentityMap.computeIfAbsent(other, k -> 30));
+		
+		assertEquals(false, weakIdentityMap.replace(key, 20, 40));
+		assertEquals(true, weakIdentityMap.replace(key, 10, 40));
+		assertEquals(Integer.valueOf(40), weakIdentityMap.replace(key, 50));
+		assertSame(null, weakIdentityMap.replace(new Integer(1), 50));
+		
+		assertEquals(Integer.valueOf(51), weakIdentityMap.computeIfPresent(key, (k, v) -> v + 1));
+		assertSame(null, weakIdentityMap.computeIfPresent(new Integer(1), (k, v) -> v + 1));
+		assertEquals(Integer.valueOf(52), weakIdentityMap.merge(key, 1, Integer::sum));
+		assertSame(null, weakIdentityMap.merge(key, 1, (a, b) -> null));
+		assertEquals(false, weakIdentityMap.containsKey(key));
+		assertEquals(Integer.valueOf(1), weakIdentityMap.merge(key, 1, Integer::sum));
+		assertEquals(Integer.valueOf(2), weakIdentityMap.compute(key, (k, v) -> v == null ? 0 : v + 1));
+		assertSame(null, weakIdentityMap.compute(key, (k, v) -> null));
+		assertEquals(false, weakIdentityMap.containsKey(key));
+		
+		assertEquals(false, weakIdentityMap.remove(other, 31));
+		assertEquals(true, weakIdentityMap.remove(other, 30));
+		assertEquals(true, weakIdentityMap.isEmpty());
+		
+		// 값이 null 인 항목은 없는 것으로 본다.
+		weakIdentityMap.put(key, null);
+		assertSame(null, weakIdentityMap.getOrDefault(key, -1));
+		assertSame(null, weakIdentityMap.putIfAbsent(key, 1));
+		assertEquals(Integer.valueOf(1), weakIdentityMap.get(key));
+		assertEquals(1, weakIdentityMap.size());
+	}
+	
+	// 새 키를 넣으며 재해시하거나 TOMBSTONE 을 재사용해도 값이 맞아야 한다.
+	@Test
+	public void testComputeIfAbsentResize() throws Exception {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = createForSameHashCodeTest();
+		list.forEach(i -> assertSame(i, weakIdentityMap.computeIfAbsent(i, k -> k)));
+		assertEquals(list.size(), weakIdentityMap.size());
+		for (int i = 0; i < list.size(); i += 2) {
+			weakIdentityMap.remove(list.get(i));
+		}
+		for (int i = 0; i < list.size(); i += 2) {
+			assertSame(list.get(i), weakIdentityMap.merge(list.get(i), list.get(i), (a, b) -> a + b));
+		}
+		assertEquals(list.size(), weakIdentityMap.size());
+		list.forEach(i -> assertSame(i, weakIdentityMap.get(i)));
+	}
+	
+	@Test(expected = ConcurrentModificationException.class)
+	public void testComputeIfAbsentConcurrentModification() {
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		weakIdentityMap.computeIfAbsent(new Integer(1), k -> weakIdentityMap.put(new Integer(2), 2));
+	}
+	
+	// 함수가 읽기만 하면 함수를 부르는 동안 GC 된 키가 있어도 예외 없이 끝나고, 정리는 다음 연산으로 미뤄진다.
+	@Test(timeout = 5000)
+	public void testComputeReadsAfterCollection() throws Exception {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		list.forEach(i -> weakIdentityMap.put(i, 1));
+		Integer key = list.get(99);
+		Integer other = new Integer(-1);
+		
+		assertEquals(Integer.valueOf(2), weakIdentityMap.computeIfPresent(key, (k, v) -> {
+			awaitEnqueued(list.subList(0, 50));
+			return weakIdentityMap.get(k) + 1;
+		}));
+		assertEquals(Integer.valueOf(3), weakIdentityMap.compute(key, (k, v) -> {
+			awaitEnqueued(list.subList(0, 10));
+			return weakIdentityMap.containsKey(k) ? v + 1 : 0;
+		}));
+		assertEquals(Integer.valueOf(4), weakIdentityMap.merge(key, 1, (v, w) -> {
+			awaitEnqueued(list.subList(0, 10));
+			return weakIdentityMap.isEmpty() ? 0 : v + w;
+		}));
+		assertEquals(Integer.valueOf(1), weakIdentityMap.computeIfAbsent(other, k -> {
+			awaitEnqueued(list.subList(0, 10));
+			return weakIdentityMap.size() > 0 ? 1 : 0;
+		}));
+		assertEquals(list.size() + 1, weakIdentityMap.size());
+	}
+	
+	// 순회 중에 부르는 함수 안에서 키가 GC 되어도 맵을 읽기만 하면 ConcurrentModificationException 이 나지 않는다.
+	@Test(timeout = 10000)
+	public void testForEachReadsAfterCollection() throws Exception {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		list.forEach(i -> weakIdentityMap.put(i, 1));
+		boolean[] first = { true, true, true, true, true };
+		
+		weakIdentityMap.forEach((k, v) -> {
+			if (first[0]) {
+				first[0] = false;
+				awaitEnqueuedExcept(list, k);
+			}
+			assertEquals(v, weakIdentityMap.get(k));
+		});
+		weakIdentityMap.replaceAll((k, v) -> {
+			if (first[1]) {
+				first[1] = false;
+				awaitEnqueuedExcept(list, k);
+			}
+			return weakIdentityMap.get(k) + 1;
+		});
+		weakIdentityMap.keySet().removeIf(k -> {
+			if (first[2]) {
+				first[2] = false;
+				awaitEnqueuedExcept(list, k);
+			}
+			return !weakIdentityMap.containsKey(k);
+		});
+		weakIdentityMap.values().forEach(v -> {
+			if (first[3]) {
+				first[3] = false;
+				awaitEnqueued(list.subList(0, 10));
+			}
+			assertEquals(false, weakIdentityMap.isEmpty());
+		});
+		weakIdentityMap.entrySet().forEach(e -> {
+			if (first[4]) {
+				first[4] = false;
+				awaitEnqueuedExcept(list, e.getKey());
+			}
+			assertEquals(e.getValue(), weakIdentityMap.get(e.getKey()));
+		});
+		assertEquals(list.size(), weakIdentityMap.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(2), weakIdentityMap.get(i)));
+	}
+	
+	// 함수가 받은 키는 GC 될 수 없으므로 그 키를 뺀 열 개를 기다린다.
+	private void awaitEnqueuedExcept(List<Integer> list, Integer keep) {
+		List<Integer> keys = list.stream().filter(i -> i != keep).limit(10).collect(Collectors.toList());
+		list.removeAll(keys);
+		awaitEnqueued(keys);
+	}
+	
+	// keys 를 목록에서 지우고 GC 되어 맵의 참조가 큐에 들어갈 때까지 기다린다.
+	private void awaitEnqueued(List<Integer> keys) {
+		ReferenceQueue<Integer> queue = new ReferenceQueue<>();
+		List<WeakReference<Integer>> probes = keys.stream().map(i -> new WeakReference<>(i, queue)).collect(Collectors.toList());
+		keys.clear();
+		awaitCollected(probes);
+		try {
+			for (int n = 0; n < probes.size(); n++) {
+				queue.remove();
+			}
+			// 맵의 참조도 같은 GC 에서 큐에 들어가므로 probe 가 모두 들어온 뒤 조금 더 기다린다.
+			Thread.sleep(50);
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	@Test
+	public void testStats() throws Exception {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		assertSame(null, weakIdentityMap.getStats());
+		WeakIdentityStats stats = weakIdentityMap.recordStats();
+		assertSame(stats, weakIdentityMap.recordStats());
+		
+		list.forEach(i -> weakIdentityMap.put(i, 1));
+		assertEquals(list.size(), stats.getMissCount());
+		list.forEach(i -> weakIdentityMap.get(i));
+		weakIdentityMap.get(new Integer(1));
+		assertEquals(list.size(), stats.getHitCount());
+		assertEquals(list.size() + 1, stats.getMissCount());
+		assertEquals(stats.getHitCount() + stats.getMissCount(), LongStream.of(stats.getProbeLengthHistogram()).sum());
+		assertTrue(stats.getAverageProbeLength() >= 1.0);
+		assertTrue(stats.getEstimatedRetainedBytes() > list.size() * Footprint.WEAK_REFERENCE_BYTES);
+		
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		awaitCollected(probes);
+		while (stats.getExpungedCount() < 50) {
+			weakIdentityMap.size();
+			Thread.yield();
+		}
+		assertEquals(50, stats.getExpungedCount());
+		assertTrue(stats.getExpungeCount() >= 1);
+		assertTrue(stats.getMaxExpungeTime() > 0);
+		
+		ObjectName name = stats.register("testStats");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(50, server.getAttribute(name, "Size"));
+			assertEquals(50L, server.getAttribute(name, "ExpungedCount"));
+			server.invoke(name, "reset", null, null);
+			assertEquals(0L, stats.getHitCount());
+		} finally {
+			stats.unregister();
+		}
+	}
+	
+	// 탐사 길이 분포는 2의 거듭제곱 구간으로 나뉜다.
+	@Test
+	public void testProbeLengthHistogram() throws Exception {
+		List<Integer> list = IntStream.range(0, 10).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = createForAllSameHashCodeTest();
+		list.forEach(i -> weakIdentityMap.put(i, 1));
+		WeakIdentityStats stats = weakIdentityMap.recordStats();
+		weakIdentityMap.get(list.get(0));
+		weakIdentityMap.get(list.get(1));
+		weakIdentityMap.get(list.get(3));
+		weakIdentityMap.get(list.get(9));
+		assertEquals("[1, 1, 1, 0, 1, 0, 0, 0]", Arrays.toString(stats.getProbeLengthHistogram()));
+	}
+	
+	// 슬롯 범위를 반씩 나누고, GC 된 키는 세지 않는다.
+	@Test(timeout = 5000)
+	public void testSpliteratorSplit() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>(ExpungePolicy.manual());
+		list.forEach(i -> weakIdentityMap.put(i, 1));
+		List<WeakReference<Integer>> probes = list.subList(0, 300).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 300).clear();
+		awaitCollected(probes);
+		assertEquals(1000, weakIdentityMap.size());
+		
+		Spliterator<Integer> spliterator = weakIdentityMap.keySet().spliterator();
+		assertTrue(spliterator.hasCharacteristics(Spliterator.DISTINCT | Spliterator.NONNULL));
+		// 정리되지 않은 키도 세므로 크기는 상한인 추정치이다.
+		assertEquals(false, spliterator.hasCharacteristics(Spliterator.SIZED));
+		assertEquals(1000, spliterator.estimateSize());
+		
+		List<Spliterator<Integer>> leaves = new ArrayList<>();
+		split(spliterator, 3, leaves);
+		assertEquals(8, leaves.size());
+		leaves.forEach(leaf -> assertEquals(1000 / 8, leaf.estimateSize()));
+		// GC 된 키는 순회하면서 건너뛰므로 합은 정확하다.
+		long count = leaves.stream().mapToLong(leaf -> StreamSupport.stream(leaf, false).count()).sum();
+		assertEquals(list.size(), count);
+		
+		assertEquals(false, weakIdentityMap.values().spliterator().hasCharacteristics(Spliterator.SIZED));
+		assertEquals(list.size(), weakIdentityMap.entrySet().parallelStream().count());
+		assertEquals(list.size(), weakIdentityMap.values().parallelStream().mapToInt(Integer::intValue).sum());
+	}
+	
+	private <T> void split(Spliterator<T> spliterator, int depth, List<Spliterator<T>> leaves) {
+		if (depth == 0) {
+			leaves.add(spliterator);
+			return;
+		}
+		Spliterator<T> prefix = spliterator.trySplit();
+		split(prefix, depth - 1, leaves);
+		split(spliterator, depth - 1, leaves);
+	}
+	
+	// 순회 중 수정과 재해시가 있어도 복사 시점의 항목을 모두 돌려준다.
+	@Test
+	public void testSnapshotIterator() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>(0);
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		
+		Set<Integer> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		Iterator<Map.Entry<Integer, Integer>> iterator = weakIdentityMap.snapshotIterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, Integer> entry = iterator.next();
+			assertSame(entry.getKey(), entry.getValue());
+			seen.add(entry.getKey());
+			weakIdentityMap.put(new Integer(entry.getKey()), 0);
+			weakIdentityMap.remove(list.get(99 - entry.getKey()));
+			if (entry.getKey() % 2 == 0) {
+				iterator.remove();
+			}
+		}
+		assertEquals(list.size(), seen.size());
+		list.forEach(i -> assertEquals(false, weakIdentityMap.containsKey(i)));
+		assertEquals(list.size(), weakIdentityMap.size());
+	}
+	
+	@Test
+	public void testWeaklyConsistentIterator() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		List<Integer> added = new ArrayList<>();
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>(0);
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		
+		Set<Integer> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Integer> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+		Iterator<Map.Entry<Integer, Integer>> iterator = weakIdentityMap.weaklyConsistentIterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, Integer> entry = iterator.next();
+			assertEquals(true, seen.add(entry.getKey()));
+			assertEquals(false, removed.contains(entry.getKey()));
+			// 재해시가 일어날 만큼 추가하고, 아직 지나지 않았을 수도 있는 키를 지운다.
+			for (int n = 0; n < 10; n++) {
+				Integer key = new Integer(-1);
+				added.add(key);
+				weakIdentityMap.put(key, key);
+			}
+			Integer other = list.get((entry.getKey() + 50) % list.size());
+			if (entry.getKey() >= 0 && weakIdentityMap.remove(other) != null) {
+				removed.add(other);
+			}
+		}
+		list.stream().filter(i -> !removed.contains(i)).forEach(i -> assertEquals(true, seen.contains(i)));
+		assertTrue(weakIdentityMap.size() > list.size());
+	}
+	
 	@Test
 	public void testNullSplitator() {
 		List<Integer> list = new ArrayList<>();
@@ -679,4 +1251,263 @@ public class WeakIdentityMapTest {
 		spliterator.tryAdvance(mi::add);
 		return s + mi.intValue();
 	}
+
+	@Test(timeout = 5000)
+	public void testRemovalListener() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		List<String> removals = new ArrayList<>();
+		
+		WeakIdentityMap<Integer,String> weakIdentityMap = new WeakIdentityMap<>();
+		weakIdentityMap.setRemovalListener((k, v, cause) -> removals.add(v + ":" + cause));
+		list.forEach(i -> weakIdentityMap.put(i, "v" + i));
+		
+		// 알림은 항목이 빠진 연산이 끝날 때 전달된다.
+		weakIdentityMap.put(list.get(0), "new");
+		assertEquals(Arrays.asList("v0:REPLACED"), removals);
+		weakIdentityMap.remove(list.get(1));
+		weakIdentityMap.computeIfPresent(list.get(2), (k, v) -> null);
+		assertEquals(Arrays.asList("v0:REPLACED", "v1:EXPLICIT", "v2:EXPLICIT"), removals);
+		removals.clear();
+		
+		// 같은 값으로 바꾸면 알리지 않는다.
+		weakIdentityMap.put(list.get(3), weakIdentityMap.get(list.get(3)));
+		assertEquals(0, removals.size());
+		
+		// 사용자 함수 안에서 빠진 항목은 그 함수를 부른 연산이 끝날 때 전달된다.
+		int[] during = { -1 };
+		weakIdentityMap.entrySet().forEach(e -> {
+			if (e.getKey() == list.get(3)) {
+				e.setValue("new");
+				during[0] = removals.size();
+			}
+		});
+		assertEquals(0, during[0]);
+		assertEquals(Arrays.asList("v3:REPLACED"), removals);
+		removals.clear();
+		
+		List<WeakReference<Integer>> probes = list.subList(10, 20).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(10, 20).clear();
+		awaitCollected(probes);
+		while (removals.size() < 10) {
+			weakIdentityMap.drainCleared();
+			Thread.yield();
+		}
+		assertEquals(IntStream.range(10, 20).mapToObj(i -> "v" + i + ":COLLECTED").collect(Collectors.toSet()), new HashSet<>(removals));
+		removals.clear();
+		
+		weakIdentityMap.clear();
+		assertEquals(88, removals.size());
+		assertTrue(removals.stream().allMatch(r -> r.endsWith(":EXPLICIT")));
+	}
+	
+	// 한 연산 안에서 빠진 항목들은 executor 의 작업 하나로 전달된다.
+	@Test(timeout = 5000)
+	public void testRemovalListenerExecutor() throws Exception {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger batches = new AtomicInteger();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		weakIdentityMap.setRemovalListener((k, v, cause) -> threads.add(Thread.currentThread()), r -> {
+			batches.incrementAndGet();
+			executor.execute(r);
+		});
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		weakIdentityMap.keySet().removeIf(i -> i % 2 == 0);
+		assertEquals(50, weakIdentityMap.size());
+		
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		assertEquals(1, batches.get());
+		assertEquals(50, threads.size());
+		assertTrue(threads.stream().noneMatch(t -> t == Thread.currentThread()));
+	}
+
+	// 많은 키가 GC 되면 용량이 살아있는 항목 수에 맞게 줄어든다.
+	@Test(timeout = 5000)
+	public void testShrinkAfterCollection() {
+		List<Integer> list = IntStream.range(0, 10000).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		list.forEach(i -> weakIdentityMap.put(i, 1));
+		assertTrue(weakIdentityMap.refs.length >= 16384);
+		
+		List<WeakReference<Integer>> probes = list.subList(10, 10000).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(10, 10000).clear();
+		awaitCollected(probes);
+		while (weakIdentityMap.size() > list.size()) {
+			Thread.yield();
+		}
+		assertEquals(32, weakIdentityMap.refs.length);
+		list.forEach(i -> assertEquals(Integer.valueOf(1), weakIdentityMap.get(i)));
+	}
+	
+	@Test
+	public void testShrinkHysteresis() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		assertEquals(2048, weakIdentityMap.refs.length);
+		
+		// 용량의 1/8 보다 적어질 때까지는 줄이지 않는다.
+		list.subList(256, 1000).forEach(weakIdentityMap::remove);
+		assertEquals(2048, weakIdentityMap.refs.length);
+		weakIdentityMap.remove(list.get(255));
+		assertEquals(1024, weakIdentityMap.refs.length);
+		
+		// 줄인 뒤 사용률은 1/3 이하이므로 다시 조금 넣어도 늘어나지 않는다.
+		list.subList(255, 400).forEach(i -> weakIdentityMap.put(i, i));
+		assertEquals(1024, weakIdentityMap.refs.length);
+		list.subList(0, 400).forEach(i -> assertSame(i, weakIdentityMap.get(i)));
+		
+		// 생성할 때의 용량보다는 자동으로 줄이지 않는다.
+		WeakIdentityMap<Integer,Integer> presized = new WeakIdentityMap<>(1000);
+		list.forEach(i -> presized.put(i, i));
+		list.forEach(presized::remove);
+		assertEquals(2048, presized.refs.length);
+	}
+	
+	// compute 계열로 지워도 remove 와 같이 줄어든다.
+	@Test
+	public void testShrinkAfterComputeRemoval() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		List<Consumer<WeakIdentityMap<Integer,Integer>>> removals = Arrays.asList(
+				m -> m.computeIfPresent(list.get(255), (k, v) -> null),
+				m -> m.compute(list.get(255), (k, v) -> null),
+				m -> m.merge(list.get(255), 0, (v, w) -> null));
+		
+		for (Consumer<WeakIdentityMap<Integer,Integer>> removal : removals) {
+			WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+			list.forEach(i -> weakIdentityMap.put(i, i));
+			list.subList(256, 1000).forEach(weakIdentityMap::remove);
+			assertEquals(2048, weakIdentityMap.refs.length);
+			removal.accept(weakIdentityMap);
+			assertEquals(false, weakIdentityMap.containsKey(list.get(255)));
+			assertEquals(1024, weakIdentityMap.refs.length);
+			list.subList(0, 255).forEach(i -> assertSame(i, weakIdentityMap.get(i)));
+		}
+	}
+	
+	@Test
+	public void testTrimToSize() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>(1000);
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		// 반복자로 지우면 용량이 그대로 남는다.
+		weakIdentityMap.keySet().removeIf(i -> i >= 10);
+		assertEquals(2048, weakIdentityMap.refs.length);
+		
+		weakIdentityMap.trimToSize();
+		assertEquals(16, weakIdentityMap.refs.length);
+		assertEquals(10, weakIdentityMap.size());
+		list.subList(0, 10).forEach(i -> assertSame(i, weakIdentityMap.get(i)));
+		
+		weakIdentityMap.putAll(list.stream().collect(Collectors.toMap(i -> i, i -> i)));
+		weakIdentityMap.clear();
+		assertEquals(2048, weakIdentityMap.refs.length);
+		
+		WeakIdentityMap<Integer,Integer> small = new WeakIdentityMap<>();
+		list.forEach(i -> small.put(i, i));
+		small.clear();
+		assertEquals(32, small.refs.length);
+	}
+	
+	@Test
+	public void testPutAllPresizesOnce() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		Map<Integer,Integer> source = new IdentityHashMap<>();
+		list.forEach(i -> source.put(i, i * 2));
+		
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		weakIdentityMap.put(list.get(0), -1);
+		int modCount = weakIdentityMap.modCount;
+		weakIdentityMap.putAll(source);
+		// 재해시 한 번과 새 키 999 개
+		assertEquals(modCount + 1 + 999, weakIdentityMap.modCount);
+		assertEquals(2048, weakIdentityMap.refs.length);
+		assertEquals(1000, weakIdentityMap.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(i * 2), weakIdentityMap.get(i)));
+		
+		// 크기가 제한된 캐시는 넣을 항목 수만큼 늘리지 않는다.
+		WeakIdentityCache<Integer,Integer> cache = new WeakIdentityCache<>(10, EvictionPolicy.LRU);
+		cache.putAll(source);
+		assertEquals(10, cache.size());
+		assertTrue(cache.refs.length < 2048);
+	}
+	
+	@Test
+	public void testReplaceAll() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		List<RemovalCause> causes = new ArrayList<>();
+		weakIdentityMap.setRemovalListener((k, v, cause) -> causes.add(cause));
+		
+		weakIdentityMap.replaceAll((k, v) -> v + 1);
+		list.forEach(i -> assertEquals(Integer.valueOf(i + 1), weakIdentityMap.get(i)));
+		// 바뀐 값마다 REPLACED 알림
+		assertEquals(Collections.nCopies(100, RemovalCause.REPLACED), causes);
+		
+		try {
+			weakIdentityMap.replaceAll((k, v) -> {
+				weakIdentityMap.remove(k);
+				return v;
+			});
+			assertTrue(false);
+		} catch (ConcurrentModificationException e) {
+		}
+	}
+	
+	@Test
+	public void testRemoveIfOnViews() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		list.forEach(i -> weakIdentityMap.put(i, i));
+		assertEquals(2048, weakIdentityMap.refs.length);
+		
+		assertTrue(weakIdentityMap.keySet().removeIf(i -> i % 2 == 0));
+		assertEquals(500, weakIdentityMap.size());
+		assertTrue(weakIdentityMap.values().removeIf(v -> v % 4 == 1));
+		assertEquals(250, weakIdentityMap.size());
+		assertTrue(weakIdentityMap.entrySet().removeIf(e -> e.getKey() >= 20));
+		assertEquals(5, weakIdentityMap.size());
+		assertEquals(false, weakIdentityMap.entrySet().removeIf(e -> false));
+		// 다 지운 뒤 한 번 줄인다.
+		assertEquals(32, weakIdentityMap.refs.length);
+		assertEquals(new HashSet<>(Arrays.asList(3, 7, 11, 15, 19)), new HashSet<>(weakIdentityMap.values()));
+		
+		try {
+			weakIdentityMap.keySet().removeIf(i -> weakIdentityMap.put(new Integer(i), i) == null);
+			assertTrue(false);
+		} catch (ConcurrentModificationException e) {
+		}
+	}
+	
+	@Test
+	public void testForEachOnViews() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+		WeakIdentityMap<Integer,Integer> weakIdentityMap = new WeakIdentityMap<>();
+		list.forEach(i -> weakIdentityMap.put(i, -i));
+		
+		Map<Integer,Integer> seen = new IdentityHashMap<>();
+		weakIdentityMap.forEach(seen::put);
+		assertEquals(100, seen.size());
+		list.forEach(i -> assertEquals(Integer.valueOf(-i), seen.get(i)));
+		
+		AtomicInteger keySum = new AtomicInteger();
+		AtomicInteger valueSum = new AtomicInteger();
+		weakIdentityMap.keySet().forEach(keySum::addAndGet);
+		weakIdentityMap.values().forEach(valueSum::addAndGet);
+		assertEquals(4950, keySum.get());
+		assertEquals(-4950, valueSum.get());
+		
+		try {
+			weakIdentityMap.forEach((k, v) -> weakIdentityMap.remove(k));
+			assertTrue(false);
+		} catch (ConcurrentModificationException e) {
+		}
+	}
 }
@@ -0,0 +1,117 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.mutable.MutableLong;
+import org.junit.Test;
+
+// WeakIdentityIntMap 과 WeakIdentityLongMap 의 공통 테스트. 값은 long 으로 넓혀 비교한다.
+public abstract class WeakIdentityPrimitiveMapTest<M extends WeakIdentityPrimitiveMap<Integer>> {
+	abstract M create();
+
+	abstract M create(ToIntFunction<Integer> hashFunction);
+
+	abstract long put(M map, Integer key, long value);
+
+	abstract long get(M map, Object key);
+
+	abstract long getOrDefault(M map, Object key, long defaultValue);
+
+	abstract long addAndGet(M map, Integer key, long delta);
+
+	abstract long remove(M map, Object key);
+
+	abstract void forEach(M map, MutableLong sum);
+
+	@Test
+	public void testPutAndGet() {
+		List<Integer> list = new ArrayList<>();
+		list.add(new Integer(1));
+		list.add(new Integer(1));
+
+		M map = create();
+		assertEquals(true, map.isEmpty());
+		assertEquals(0L, put(map, list.get(0), 10));
+		assertEquals(0L, put(map, list.get(1), 20));
+		assertEquals(20L, put(map, list.get(1), 30));
+		assertEquals(2, map.size());
+
+		assertEquals(10L, get(map, list.get(0)));
+		assertEquals(30L, get(map, list.get(1)));
+		assertEquals(0L, get(map, new Integer(1)));
+		assertEquals(-1L, getOrDefault(map, new Integer(1), -1));
+		assertEquals(false, map.containsKey(new Integer(1)));
+
+		assertEquals(0L, remove(map, new Integer(1)));
+		assertEquals(10L, remove(map, list.get(0)));
+		assertEquals(false, map.containsKey(list.get(0)));
+		assertEquals(1, map.size());
+		assertEquals("{1=30}", map.toString());
+
+		map.clear();
+		assertEquals(true, map.isEmpty());
+	}
+
+	@Test
+	public void testAddAndGet() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		M map = create();
+		for (int round = 1; round <= 3; round++) {
+			for (Integer i : list) {
+				assertEquals((long) i * round, addAndGet(map, i, i));
+			}
+		}
+		assertEquals(list.size(), map.size());
+
+		MutableLong sum = new MutableLong();
+		forEach(map, sum);
+		assertEquals(list.stream().mapToLong(i -> i * 3L).sum(), sum.longValue());
+	}
+
+	@Test
+	public void testHashFunction() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(i -> new Integer(1)).collect(Collectors.toList());
+
+		// 모든 키의 해시가 같아도 동일성으로 구분한다.
+		M map = create(i -> 1);
+		for (int i = 0; i < list.size(); i++) {
+			put(map, list.get(i), i);
+		}
+		assertEquals(100, map.size());
+		for (int i = 0; i < list.size(); i++) {
+			assertEquals(i, get(map, list.get(i)));
+		}
+		assertEquals(0L, get(map, new Integer(1)));
+		assertEquals(50L, remove(map, list.get(50)));
+		assertEquals(99, map.size());
+		assertEquals(99L, get(map, list.get(99)));
+	}
+
+	@Test(timeout = 5000)
+	public void testExpunge() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		M map = create();
+		list.forEach(i -> put(map, i, i));
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (map.size() > list.size()) {
+			System.gc();
+			Thread.yield();
+		}
+
+		assertTrue(probes.stream().allMatch(r -> r.get() == null));
+		assertEquals(list.size(), map.size());
+		list.forEach(i -> assertEquals(i.longValue(), get(map, i)));
+	}
+}
@@ -0,0 +1,198 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class WeakIdentitySetTest {
+	@Test
+	public void testAddContainsRemove() {
+		Integer a = new Integer(1);
+		Integer b = new Integer(1);
+
+		WeakIdentitySet<Integer> set = new WeakIdentitySet<>();
+		assertEquals(true, set.add(a));
+		assertEquals(false, set.add(a));
+		assertEquals(true, set.contains(a));
+		// 같은 값이라도 다른 객체는 다른 원소이다.
+		assertEquals(false, set.contains(b));
+		assertEquals(true, set.add(b));
+		assertEquals(2, set.size());
+
+		assertEquals(true, set.remove(a));
+		assertEquals(false, set.remove(a));
+		assertEquals(false, set.contains(a));
+		assertEquals(true, set.contains(b));
+		assertEquals(1, set.size());
+	}
+
+	@Test
+	public void testBulkOperations() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentitySet<Integer> set = new WeakIdentitySet<>(0);
+		assertEquals(true, set.addAll(list));
+		assertEquals(false, set.addAll(list));
+		assertEquals(list.size(), set.size());
+		assertEquals(true, set.containsAll(list));
+
+		assertEquals(true, set.removeAll(list.subList(0, 500)));
+		assertEquals(500, set.size());
+		assertEquals(false, set.containsAll(list));
+		assertEquals(true, set.containsAll(list.subList(500, 1000)));
+
+		assertEquals(true, set.retainAll(list.subList(900, 1000)));
+		assertEquals(100, set.size());
+		assertEquals(100, set.toArray().length);
+		assertEquals(100, set.toArray(new Integer[0]).length);
+		assertEquals(100, set.stream().count());
+
+		Set<Integer> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+		expected.addAll(list.subList(900, 1000));
+		assertEquals(expected, set);
+		assertEquals(set, expected);
+		assertEquals(expected.hashCode(), set.hashCode());
+	}
+
+	@Test
+	public void testIterator() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentitySet<Integer> set = new WeakIdentitySet<>();
+		set.addAll(list);
+		for (Iterator<Integer> it = set.iterator(); it.hasNext();) {
+			if (it.next() % 2 == 0) {
+				it.remove();
+			}
+		}
+		assertEquals(50, set.size());
+		set.forEach(i -> assertTrue(i % 2 == 1));
+
+		try {
+			for (Integer i : set) {
+				set.remove(i);
+			}
+			throw new AssertionError();
+		} catch (ConcurrentModificationException e) {
+		}
+	}
+
+	// 지운 것이 없는 일괄 연산은 열린 반복자를 깨지 않는다.
+	@Test
+	public void testNoOpBulkRemoveDuringIteration() {
+		List<Integer> list = IntStream.range(0, 1000).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentitySet<Integer> set = new WeakIdentitySet<>();
+		set.addAll(list);
+		// 반복자로 지우면 테이블을 줄이지 않으므로 성긴 채로 남는다.
+		for (Iterator<Integer> it = set.iterator(); it.hasNext();) {
+			if (it.next() >= 10) {
+				it.remove();
+			}
+		}
+
+		int count = 0;
+		for (Iterator<Integer> it = set.iterator(); it.hasNext(); count++) {
+			it.next();
+			assertEquals(false, set.removeAll(Collections.singleton(new Integer(0))));
+			assertEquals(false, set.retainAll(list));
+		}
+		assertEquals(10, count);
+	}
+
+	@Test(timeout = 5000)
+	public void testWeakElements() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentitySet<Integer> set = new WeakIdentitySet<>();
+		set.addAll(list);
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+		while (set.size() > list.size()) {
+			Thread.yield();
+		}
+		assertEquals(true, set.containsAll(list));
+	}
+
+	@Test(timeout = 5000)
+	public void testEqualsIgnoresClearedElements() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		WeakIdentitySet<Integer> set = new WeakIdentitySet<>(ExpungePolicy.manual());
+		set.addAll(list);
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+
+		// GC 된 원소가 정리되지 않아 size 는 100 이지만 살아있는 원소는 같다.
+		assertEquals(100, set.size());
+		Set<Integer> live = Collections.newSetFromMap(new IdentityHashMap<>());
+		live.addAll(list);
+		WeakIdentitySet<Integer> other = new WeakIdentitySet<>();
+		other.addAll(list);
+		assertEquals(set, live);
+		assertEquals(set, other);
+		assertEquals(other, set);
+		assertEquals(other.hashCode(), set.hashCode());
+
+		other.remove(list.get(0));
+		assertNotEquals(set, other);
+		assertNotEquals(other, set);
+	}
+
+	@Test(timeout = 5000)
+	public void testConcurrentSet() {
+		List<Integer> list = IntStream.range(0, 100).mapToObj(Integer::new).collect(Collectors.toList());
+
+		ConcurrentWeakIdentitySet<Integer> set = new ConcurrentWeakIdentitySet<>();
+		assertEquals(true, set.addAll(list));
+		assertEquals(false, set.add(list.get(0)));
+		assertEquals(false, set.contains(new Integer(0)));
+		assertEquals(list.size(), set.size());
+
+		// 반복 중 변경해도 예외가 없다.
+		for (Integer i : set) {
+			if (i % 2 == 0) {
+				set.remove(i);
+			}
+		}
+		assertEquals(50, set.size());
+		assertEquals(true, set.removeAll(Arrays.asList(list.get(1), list.get(3))));
+		assertEquals(48, set.size());
+
+		List<WeakReference<Integer>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+		int drained = 0;
+		while (drained < 23) {
+			drained += set.drainCleared();
+			Thread.yield();
+		}
+		assertEquals(25, set.size());
+	}
+}
@@ -0,0 +1,108 @@
+package util.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class WeakInternerTest {
+	@Test
+	public void testIntern() {
+		String a = new String("value");
+		String b = new String("value");
+		assertNotSame(a, b);
+
+		WeakInterner<String> interner = new WeakInterner<>();
+		assertSame(null, interner.getIfPresent(a));
+		assertSame(a, interner.intern(a));
+		assertSame(a, interner.intern(b));
+		assertSame(a, interner.getIfPresent(b));
+		assertSame(null, interner.getIfPresent("other"));
+		assertEquals(1, interner.size());
+
+		List<String> list = IntStream.range(0, 1000).mapToObj(i -> new String("v" + i)).collect(Collectors.toList());
+		list.forEach(interner::intern);
+		assertEquals(1001, interner.size());
+		IntStream.range(0, 1000).forEach(i -> assertSame(list.get(i), interner.intern(new String("v" + i))));
+
+		interner.clear();
+		assertEquals(0, interner.size());
+		assertSame(b, interner.intern(b));
+	}
+
+	// 같은 해시의 서로 다른 값은 각자 대표가 된다.
+	@Test
+	public void testHashCollision() {
+		WeakInterner<String> interner = new WeakInterner<>(0, 1);
+		String a = new String("Aa");
+		String b = new String("BB");
+		assertEquals(a.hashCode(), b.hashCode());
+		assertSame(a, interner.intern(a));
+		assertSame(b, interner.intern(b));
+		assertSame(a, interner.intern(new String("Aa")));
+		assertSame(b, interner.intern(new String("BB")));
+		assertEquals(2, interner.size());
+	}
+
+	@Test(timeout = 5000)
+	public void testWeakValues() {
+		List<String> list = IntStream.range(0, 100).mapToObj(i -> new String("v" + i)).collect(Collectors.toList());
+
+		WeakInterner<String> interner = new WeakInterner<>();
+		list.forEach(interner::intern);
+
+		List<WeakReference<String>> probes = list.subList(0, 50).stream().map(WeakReference::new).collect(Collectors.toList());
+		list.subList(0, 50).clear();
+		while (probes.stream().anyMatch(r -> r.get() != null)) {
+			System.gc();
+			Thread.yield();
+		}
+		int drained = 0;
+		while (drained < 50) {
+			drained += interner.drainCleared();
+			Thread.yield();
+		}
+		assertEquals(list.size(), interner.size());
+		// 수거된 값은 새 객체가 대표가 된다.
+		String v0 = new String("v0");
+		assertSame(v0, interner.intern(v0));
+		list.forEach(s -> assertSame(s, interner.intern(new String(s))));
+	}
+
+	// 여러 스레드가 같은 값을 동시에 intern 해도 대표는 하나이다.
+	@Test(timeout = 10000)
+	public void testConcurrentIntern() throws Exception {
+		WeakInterner<String> interner = new WeakInterner<>(0, 2);
+		int threads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<List<String>>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> IntStream.range(0, 10000).mapToObj(i -> interner.intern(new String("v" + i)))
+						.collect(Collectors.toList())));
+			}
+			List<String> first = futures.get(0).get();
+			for (Future<List<String>> future : futures) {
+				List<String> result = future.get();
+				for (int i = 0; i < result.size(); i++) {
+					assertSame(first.get(i), result.get(i));
+				}
+			}
+			assertEquals(10000, interner.size());
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+}